@@ -0,0 +1,45 @@
+package org.moon.figura.avatars.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rebuilding a part matrix from its transforms, which happens for every changed part every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartCustomizationBenchmark {
+
+    @Param({"GROUP", "MESH"})
+    public PartCustomization.PartType partType;
+
+    private PartCustomization customization;
+    private double angle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        customization = PartCustomization.of();
+        customization.partType = partType;
+        customization.setPivot(4, 12, 2);
+        customization.setScale(1, 1.5, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        customization.free();
+    }
+
+    @Benchmark
+    public void recalculate(Blackhole blackhole) {
+        angle += 1;
+        customization.setRot(angle, angle * 0.5, 0);
+        customization.recalculate();
+        blackhole.consume(customization.positionMatrix.v11);
+    }
+}
@@ -0,0 +1,40 @@
+package org.moon.figura.avatars.model.rendering;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of one avatar: walking the whole part tree and pushing every vertex.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvatarRenderBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int groups;
+
+    @Param({"20"})
+    public int cubesPerGroup;
+
+    @Param({"5"})
+    public int meshesPerGroup;
+
+    private SyntheticAvatar avatar;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        avatar = new SyntheticAvatar(groups, cubesPerGroup, meshesPerGroup);
+    }
+
+    @Benchmark
+    public void renderTree(Blackhole blackhole) {
+        avatar.renderTree();
+        blackhole.consume(avatar.bufferSource.consumer.checksum);
+    }
+}
@@ -0,0 +1,54 @@
+package org.moon.figura.avatars.model.rendering;
+
+import org.moon.figura.avatars.model.PartCustomization;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw vertex throughput of FiguraImmediateBuffer.pushVertices, one operation is one vertex,
+ * so the throughput mode reads as vertices per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ImmediateBufferBenchmark.VERTICES)
+public class ImmediateBufferBenchmark {
+
+    public static final int GROUPS = 100, CUBES_PER_GROUP = 10;
+    public static final int VERTICES = GROUPS * CUBES_PER_GROUP * 6 * 4;
+
+    private SyntheticAvatar avatar;
+    private FiguraImmediateBuffer buffer;
+    private int faces;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        avatar = new SyntheticAvatar(GROUPS, CUBES_PER_GROUP, 0);
+        buffer = avatar.renderer.buffers.get(0);
+        faces = avatar.countFaces();
+
+        //a non trivial transform on top of the stack, like a part deep in the tree
+        PartCustomization customization = avatar.renderer.setupRootCustomization(1.5d);
+        customization.setPrimaryRenderType(avatar.renderer.root.customization.getPrimaryRenderType());
+        customization.setRot(15, 30, 45);
+        customization.recalculate();
+        avatar.renderer.customizationStack.push(customization);
+        customization.free();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        avatar.renderer.customizationStack.pop();
+    }
+
+    @Benchmark
+    public void pushVertices(Blackhole blackhole) {
+        buffer.pushVertices(avatar.renderer, 0, faces, new int[] {Integer.MAX_VALUE});
+        blackhole.consume(avatar.bufferSource.consumer.checksum);
+    }
+}
@@ -0,0 +1,261 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.renderer.LightTexture;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import net.minecraft.nbt.ByteTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.ShortTag;
+import net.minecraft.server.Bootstrap;
+import org.moon.figura.avatars.Avatar;
+import org.moon.figura.avatars.model.PartCustomization;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Builds a fake avatar out of generated nbt, so the render path can be benchmarked without a client or a GPU.
+ * Textures need a GL context, so the parts use a forced render type instead of a texture.
+ */
+public class SyntheticAvatar {
+
+    public static final String[] FACES = {"n", "s", "e", "w", "u", "d"};
+
+    public final Avatar avatar;
+    public final StackAvatarRenderer renderer;
+    public final CountingBufferSource bufferSource = new CountingBufferSource();
+
+    public SyntheticAvatar(int groups, int cubesPerGroup, int meshesPerGroup) {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+
+        //the avatar constructor needs the whole mod running (trust, config...), and the renderer only needs the nbt
+        avatar = allocate(Avatar.class);
+        avatar.nbt = generateNbt(groups, cubesPerGroup, meshesPerGroup);
+
+        renderer = new StackAvatarRenderer(avatar);
+        renderer.currentFilterScheme = PartFilterScheme.MODEL;
+        renderer.matrices = new PoseStack();
+        renderer.bufferSource = bufferSource;
+        renderer.light = LightTexture.FULL_BRIGHT;
+        renderer.overlay = OverlayTexture.NO_OVERLAY;
+        renderer.alpha = 1f;
+    }
+
+    /**
+     * Same as the common render of the StackAvatarRenderer, minus everything that needs a client.
+     */
+    public void renderTree() {
+        PartCustomization customization = renderer.setupRootCustomization(1.5d);
+        renderer.customizationStack.push(customization);
+        renderer.rootMatrixCache.matchRoot(renderer.customizationStack.peek());
+        customization.free();
+
+        int[] remainingComplexity = {Integer.MAX_VALUE};
+        renderer.renderPart(renderer.root, remainingComplexity, PartFilterScheme.MODEL.initialValue(renderer.root));
+
+        renderer.customizationStack.pop();
+    }
+
+    public int countFaces() {
+        int faces = 0;
+        for (FiguraImmediateBuffer buffer : renderer.buffers)
+            faces += buffer.positions.capacity() / 12;
+        return faces;
+    }
+
+    // -- nbt generation -- //
+
+    public static CompoundTag generateNbt(int groups, int cubesPerGroup, int meshesPerGroup) {
+        Random random = new Random(42);
+
+        CompoundTag nbt = new CompoundTag();
+
+        ListTag textures = new ListTag();
+        CompoundTag texture = new CompoundTag();
+        texture.putString("name", "synthetic");
+        textures.add(texture);
+        nbt.put("textures", textures);
+
+        ListTag groupList = new ListTag();
+        for (int i = 0; i < groups; i++) {
+            CompoundTag group = new CompoundTag();
+            group.putString("name", "group" + i);
+            group.put("rot", vec(random.nextFloat() * 90f, random.nextFloat() * 90f, 0f));
+            group.put("piv", vec(random.nextFloat() * 8f, random.nextFloat() * 24f, random.nextFloat() * 8f));
+
+            ListTag children = new ListTag();
+            for (int j = 0; j < cubesPerGroup; j++)
+                children.add(generateCube("cube" + j, random));
+            for (int j = 0; j < meshesPerGroup; j++)
+                children.add(generateMesh("mesh" + j, random));
+            group.put("chld", children);
+
+            groupList.add(group);
+        }
+
+        CompoundTag models = new CompoundTag();
+        models.putString("name", "models");
+        models.putString("primary", "GLINT");
+        models.put("chld", groupList);
+        nbt.put("models", models);
+
+        return nbt;
+    }
+
+    private static CompoundTag generateCube(String name, Random random) {
+        CompoundTag cube = new CompoundTag();
+        cube.putString("name", name);
+
+        float x = random.nextFloat() * 16f, y = random.nextFloat() * 16f, z = random.nextFloat() * 16f;
+        cube.put("f", vec(x, y, z));
+        cube.put("t", vec(x + 1f + random.nextFloat() * 4f, y + 1f + random.nextFloat() * 4f, z + 1f + random.nextFloat() * 4f));
+        cube.put("rot", vec(0f, random.nextFloat() * 45f, 0f));
+
+        CompoundTag faces = new CompoundTag();
+        for (String face : FACES) {
+            CompoundTag faceNbt = new CompoundTag();
+            faceNbt.putShort("tex", (short) 0);
+            ListTag uv = new ListTag();
+            uv.add(FloatTag.valueOf(0f));
+            uv.add(FloatTag.valueOf(0f));
+            uv.add(FloatTag.valueOf(16f));
+            uv.add(FloatTag.valueOf(16f));
+            faceNbt.put("uv", uv);
+            faces.put(face, faceNbt);
+        }
+        cube.put("cube_data", faces);
+
+        return cube;
+    }
+
+    //a little quad strip, 8 vertices and 3 faces
+    private static CompoundTag generateMesh(String name, Random random) {
+        CompoundTag mesh = new CompoundTag();
+        mesh.putString("name", name);
+
+        ListTag vtx = new ListTag();
+        ListTag uvs = new ListTag();
+        ListTag tex = new ListTag();
+        ListTag fac = new ListTag();
+
+        for (int i = 0; i < 4; i++) {
+            float h = i * 2f + random.nextFloat();
+            vtx.add(FloatTag.valueOf(0f)); vtx.add(FloatTag.valueOf(h)); vtx.add(FloatTag.valueOf(0f));
+            vtx.add(FloatTag.valueOf(4f)); vtx.add(FloatTag.valueOf(h)); vtx.add(FloatTag.valueOf(random.nextFloat()));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            tex.add(ShortTag.valueOf((short) 4));
+            int[] indices = {i * 2, i * 2 + 1, i * 2 + 3, i * 2 + 2};
+            for (int index : indices) {
+                fac.add(ByteTag.valueOf((byte) index));
+                uvs.add(FloatTag.valueOf(random.nextFloat() * 16f));
+                uvs.add(FloatTag.valueOf(random.nextFloat() * 16f));
+            }
+        }
+
+        CompoundTag data = new CompoundTag();
+        data.put("vtx", vtx);
+        data.put("uvs", uvs);
+        data.put("tex", tex);
+        data.put("fac", fac);
+        mesh.put("mesh_data", data);
+
+        return mesh;
+    }
+
+    private static ListTag vec(float x, float y, float z) {
+        ListTag list = new ListTag();
+        list.add(FloatTag.valueOf(x));
+        list.add(FloatTag.valueOf(y));
+        list.add(FloatTag.valueOf(z));
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T allocate(Class<T> clazz) {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (T) ((Unsafe) field.get(null)).allocateInstance(clazz);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // -- counting consumer -- //
+
+    /**
+     * Swallows every vertex, only counting them, so the benchmark measures our own cost.
+     */
+    public static class CountingVertexConsumer implements VertexConsumer {
+
+        public long vertices;
+        public double checksum;
+
+        @Override
+        public void vertex(float x, float y, float z, float red, float green, float blue, float alpha, float u, float v, int overlay, int light, float normalX, float normalY, float normalZ) {
+            vertices++;
+            checksum += x + y + z + u + v + normalX;
+        }
+
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            vertices++;
+            checksum += x + y + z;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv(float u, float v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlayCoords(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv2(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            return this;
+        }
+
+        @Override
+        public void endVertex() {}
+
+        @Override
+        public void defaultColor(int red, int green, int blue, int alpha) {}
+
+        @Override
+        public void unsetDefaultColor() {}
+    }
+
+    public static class CountingBufferSource implements MultiBufferSource {
+
+        public final CountingVertexConsumer consumer = new CountingVertexConsumer();
+
+        @Override
+        public VertexConsumer getBuffer(RenderType renderType) {
+            return consumer;
+        }
+    }
+}
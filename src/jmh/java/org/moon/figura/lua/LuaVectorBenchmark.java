@@ -0,0 +1,69 @@
+package org.moon.figura.lua;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JseBaseLib;
+import org.luaj.vm2.lib.jse.JseMathLib;
+import org.moon.figura.math.vector.FiguraVec3;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ops/sec of the scripts/vector_math.lua script, with the hand written vector metamethods and with the reflective ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuaVectorBenchmark {
+
+    @Param({"true", "false"})
+    public boolean fastMetamethods;
+
+    private LuaFunction tick;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        VectorMetamethods.enabled = fastMetamethods;
+
+        LuaTypeManager typeManager = new LuaTypeManager();
+        typeManager.generateMetatableFor(FiguraVec3.class);
+
+        Globals globals = new Globals();
+        globals.load(new JseBaseLib());
+        globals.load(new JseMathLib());
+        LuaC.install(globals);
+
+        globals.set("vec", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return typeManager.javaToLua(FiguraVec3.of(args.checkdouble(1), args.checkdouble(2), args.checkdouble(3)));
+            }
+        });
+
+        try (InputStream stream = LuaVectorBenchmark.class.getResourceAsStream("/scripts/vector_math.lua")) {
+            if (stream == null)
+                throw new IOException("Failed to load vector_math.lua");
+            tick = globals.load(new String(stream.readAllBytes()), "vector_math").call().checkfunction();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        VectorMetamethods.enabled = true;
+    }
+
+    @Benchmark
+    public LuaValue vectorMath() {
+        return tick.call();
+    }
+}
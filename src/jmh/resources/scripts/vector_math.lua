@@ -0,0 +1,18 @@
+-- animation style vector math, the kind of code avatars run for many parts every tick and frame
+-- "vec" is set by the benchmark, the returned function is one benchmark op
+
+local pivot = vec(0, 24, 0)
+local velocity = vec(0.1, -0.2, 0.3)
+local offset = vec(1, 1, 1)
+local time = 0
+
+return function()
+    time = time + 1
+    local t = time * 0.05
+
+    local swing = vec(math.sin(t), math.cos(t), 0) * 15
+    local pos = pivot + velocity * t - offset / 2
+    local rot = -swing + pos * 0.5 + 2 * offset
+
+    return rot.x + rot.y + rot.z + pos[1] + #pos
+end
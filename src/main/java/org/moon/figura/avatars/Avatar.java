@@ -7,6 +7,7 @@ import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.math.Vector3f;
+import net.minecraft.Util;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.model.geom.ModelPart;
@@ -28,11 +29,15 @@ import org.luaj.vm2.*;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.animation.Animation;
 import org.moon.figura.animation.AnimationPlayer;
+import org.moon.figura.avatars.model.FiguraModelPart;
 import org.moon.figura.avatars.model.ParentType;
 import org.moon.figura.avatars.model.PartCustomization;
+import org.moon.figura.avatars.model.rendering.AvatarLod;
 import org.moon.figura.avatars.model.rendering.AvatarRenderer;
 import org.moon.figura.avatars.model.rendering.PartFilterScheme;
+import org.moon.figura.avatars.model.rendering.SkullRenderBatch;
 import org.moon.figura.avatars.model.rendering.StackAvatarRenderer;
+import org.moon.figura.avatars.model.rendering.VertexBufferAvatarRenderer;
 import org.moon.figura.config.Config;
 import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.lua.FiguraLuaRuntime;
@@ -51,6 +56,7 @@ import org.moon.figura.utils.ui.UIHelper;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -82,6 +88,10 @@ public class Avatar {
     //Runtime data
     public AvatarRenderer renderer;
     public FiguraLuaRuntime luaRuntime;
+    private final SkullRenderBatch skullBatch = new SkullRenderBatch();
+    private int poseCheckFrame = -1;
+    private boolean skullNeedsPose;
+    public final AvatarLod lod = new AvatarLod();
 
     public final TrustContainer trust;
 
@@ -90,6 +100,13 @@ public class Avatar {
 
     private int initLimit, worldRenderLimit;
 
+    //the avatar being hotswapped, its unchanged textures and sounds are taken while loading this one
+    private Avatar previous;
+
+    //lazy script loading, the script is only created once the avatar is seen or close enough
+    private boolean scriptPending = false;
+    private long lastSeenTime = 0L;
+
     //runtime status
     public boolean hasTexture = false;
     public boolean scriptError = false;
@@ -100,7 +117,7 @@ public class Avatar {
     public int complexityLimit;
 
     public int initInstructions, entityInitInstructions;
-    public int entityTickInstructions, worldTickInstructions;
+    public int entityTickInstructions, worldTickInstructions, threadsTickInstructions;
 
     public int worldRenderInstructions, entityRenderInstructions, postEntityRenderInstructions, postWorldRenderInstructions;
     public int accumulatedInitInstructions, accumulatedTickInstructions, accumulatedEntityRenderInstructions, accumulatedWorldRenderInstructions;
@@ -125,14 +142,28 @@ public class Avatar {
     }
 
     public void load(CompoundTag nbt) {
+        load(nbt, null);
+    }
+
+    /**
+     * Loads the avatar reusing the textures and sounds of the previous one which did not change,
+     * and cleans the previous avatar once done
+     */
+    public void load(CompoundTag nbt, Avatar previous) {
+        //the previous avatar is not ticked anymore, so its sounds would never stop
+        if (previous != null)
+            SoundAPI.getSoundEngine().figura$stopSound(owner, null);
+
         CompletableFuture<Void> future = run(() -> {
             this.nbt = nbt;
+            this.previous = previous;
             loaded = false;
         });
 
         future.join();
 
         if (nbt == null) {
+            releasePrevious();
             loaded = true;
             return;
         }
@@ -152,22 +183,40 @@ public class Avatar {
         }).thenRun(() -> { //animations and models
             try {
                 loadAnimations();
-                renderer = new StackAvatarRenderer(this);
+                renderer = createRenderer();
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("", e);
             }
         }).thenRun(() -> { //sounds and script
             try {
                 loadCustomSounds();
-                createLuaRuntime();
+                if (Config.SCRIPT_INIT_DISTANCE.asInt() > 0 && !FiguraMod.isLocal(owner) && nbt.contains("scripts"))
+                    scriptPending = true;
+                else
+                    createLuaRuntime();
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("", e);
             }
 
+            releasePrevious();
             loaded = true;
         });
     }
 
+    public AvatarRenderer getPreviousRenderer() {
+        return previous == null ? null : previous.renderer;
+    }
+
+    //whatever was not taken from the previous avatar is freed on the client thread, as it was created there
+    private void releasePrevious() {
+        if (previous == null)
+            return;
+
+        Avatar old = previous;
+        previous = null;
+        Minecraft.getInstance().execute(old::cleanResources);
+    }
+
     private void checkUser() {
         if (luaRuntime != null && luaRuntime.user == null) {
             Entity entity = EntityUtils.getEntityByUUID(owner);
@@ -180,6 +229,11 @@ public class Avatar {
     }
 
     public void tick() {
+        if (!loaded)
+            return;
+
+        updateLazyScript();
+
         if (scriptError || luaRuntime == null)
             return;
 
@@ -196,6 +250,83 @@ public class Avatar {
         //call events
         worldTickEvent();
         tickEvent();
+        threadsTickEvent();
+    }
+
+    //creates the pending script once the avatar is close, and drops the script after not seeing the avatar for a while
+    private void updateLazyScript() {
+        if (scriptError || FiguraMod.isLocal(owner))
+            return;
+
+        if (scriptPending) {
+            if (!isNearby())
+                return;
+
+            //off the client thread, like the avatar loading
+            scriptPending = false;
+            loaded = false;
+            run(() -> {
+                try {
+                    createLuaRuntime();
+                } catch (Exception e) {
+                    FiguraMod.LOGGER.error("", e);
+                }
+                loaded = true;
+            });
+        } else if (luaRuntime != null) {
+            int evictTime = Config.SCRIPT_EVICT_TIME.asInt();
+            if (evictTime > 0 && Util.getMillis() - lastSeenTime > evictTime * 1000L && !isNearby())
+                evictScript();
+        }
+    }
+
+    //drops the script, and undoes what it did to the avatar, so the next init starts from the avatar as it was uploaded
+    private void evictScript() {
+        FiguraLuaRuntime runtime = luaRuntime;
+        luaRuntime = null;
+        scriptPending = true;
+
+        runtime.threads.stopAll();
+        clearAnimations();
+        AvatarEventExecutor.runOnClientThread(() -> SoundAPI.getSoundEngine().figura$stopSound(owner, null));
+        color = nbt.getCompound("metadata").getString("color");
+
+        //models and animations are loaded again from the nbt, off the client thread
+        //the animations are replaced by id and start stopped, so the client thread skips them until a script plays one
+        loaded = false;
+        run(() -> {
+            AvatarRenderer newRenderer = null;
+            try {
+                loadAnimations();
+                newRenderer = createRenderer();
+            } catch (Exception e) {
+                FiguraMod.LOGGER.error("", e);
+            }
+
+            //swapped on the client thread, between frames, so a render never uses a renderer set up for the old one
+            AvatarRenderer built = newRenderer;
+            Minecraft.getInstance().execute(() -> {
+                if (built != null) {
+                    AvatarRenderer old = renderer;
+                    renderer = built;
+                    skullBatch.invalidate();
+                    if (old != null)
+                        old.clean();
+                }
+                loaded = true;
+            });
+        });
+    }
+
+    //rendered in the last second, or within the script init distance
+    private boolean isNearby() {
+        if (Util.getMillis() - lastSeenTime < 1000L)
+            return true;
+
+        int distance = Config.SCRIPT_INIT_DISTANCE.asInt();
+        Entity entity = EntityUtils.getEntityByUUID(owner);
+        Entity camera = Minecraft.getInstance().getCameraEntity();
+        return distance > 0 && entity != null && camera != null && entity.distanceToSqr(camera) <= (double) distance * distance;
     }
 
     public void runPing(int id, byte[] data) {
@@ -217,7 +348,7 @@ public class Avatar {
     //Calling with maxInstructions as -1 will not set the max instructions, and instead keep them as they are.
     //returns whatever if it succeeded or not calling the function
     public void tryCall(Object toRun, int maxInstructions, Object... args) {
-        if (scriptError || luaRuntime == null || UIHelper.paperdoll)
+        if (!loaded || scriptError || luaRuntime == null || UIHelper.paperdoll)
             return;
 
         try {
@@ -238,12 +369,20 @@ public class Avatar {
 
             if (maxInstructions != -1)
                 luaRuntime.setInstructionLimit(maxInstructions);
+            //an event may be called from inside another one, so keep the limit of the outer one
+            FiguraLuaRuntime runtime = luaRuntime;
+            long outerLimit = runtime.getTimeLimit(), outerStart = runtime.getEventStart();
+            int timeLimit = trust.get(TrustContainer.Trust.EVENT_TIME);
+            luaRuntime.setTimeLimit(TrustContainer.Trust.EVENT_TIME.checkInfinity(timeLimit) ? -1 : timeLimit);
             if (toRun instanceof LuaEvent event)
                 event.call(val);
             else if (toRun instanceof LuaFunction func)
                 func.invoke(val);
             else
                 throw new LuaError("Invalid type to run!");
+
+            //the time limit is only for the events
+            runtime.restoreTimeLimit(outerLimit, outerStart);
         } catch (Exception ex) {
             FiguraLuaPrinter.sendLuaError(ex, entityName, owner);
             scriptError = true;
@@ -274,6 +413,26 @@ public class Avatar {
         }
     }
 
+    //resumes the script threads with what is left of the tick instructions
+    public void threadsTickEvent() {
+        if (scriptError || luaRuntime == null || luaRuntime.threads == null || luaRuntime.threads.isEmpty())
+            return;
+
+        int limit = trust.get(TrustContainer.Trust.TICK_INST);
+        int budget = TrustContainer.Trust.TICK_INST.checkInfinity(limit) ? Integer.MAX_VALUE : limit - entityTickInstructions;
+
+        //no time limit, as the event time is the cpu time of the calling thread, but each lua thread runs on its own java thread
+        //so their time would never be counted, they are still limited by the instructions
+        try {
+            threadsTickInstructions = luaRuntime.threads.tick(budget);
+            accumulatedTickInstructions += threadsTickInstructions;
+        } catch (Exception ex) {
+            FiguraLuaPrinter.sendLuaError(ex, entityName, owner);
+            scriptError = true;
+            luaRuntime = null;
+        }
+    }
+
     public void worldTickEvent() {
         if (scriptError || luaRuntime == null)
             return;
@@ -366,9 +525,16 @@ public class Avatar {
     // -- rendering events -- //
 
     public void render(Entity entity, float yaw, float delta, float alpha, PoseStack matrices, MultiBufferSource bufferSource, int light, int overlay, LivingEntityRenderer<?, ?> entityRenderer, PartFilterScheme filter, boolean translucent, boolean glowing) {
-        if (renderer == null)
+        render(entity, yaw, delta, alpha, matrices, bufferSource, light, overlay, entityRenderer, filter, translucent, glowing, AvatarLod.Tier.FULL);
+    }
+
+    public void render(Entity entity, float yaw, float delta, float alpha, PoseStack matrices, MultiBufferSource bufferSource, int light, int overlay, LivingEntityRenderer<?, ?> entityRenderer, PartFilterScheme filter, boolean translucent, boolean glowing, AvatarLod.Tier lod) {
+        if (renderer == null || lod == AvatarLod.Tier.VANILLA)
             return;
 
+        if (!UIHelper.paperdoll)
+            lastSeenTime = Util.getMillis();
+
         renderer.vanillaModelData.update(entityRenderer);
         renderer.currentFilterScheme = filter;
         renderer.entity = entity;
@@ -382,7 +548,19 @@ public class Avatar {
         renderer.translucent = translucent;
         renderer.glowing = glowing;
 
+        boolean reduced = lod == AvatarLod.Tier.REDUCED;
+        renderer.allowRenderTasks = !reduced;
+        renderer.allowSecondaryTextures = !reduced;
+        renderer.minPartPixels = reduced ? AvatarLod.REDUCED_PART_PIXELS : 0f;
+        //only cull in the world, the paperdoll and the first person arms have their own spaces
+        renderer.allowPartCulling = !UIHelper.paperdoll && filter != PartFilterScheme.LEFT_ARM && filter != PartFilterScheme.RIGHT_ARM;
+
         renderer.render();
+
+        renderer.allowRenderTasks = true;
+        renderer.allowSecondaryTextures = true;
+        renderer.minPartPixels = 0f;
+        renderer.allowPartCulling = false;
     }
 
     public synchronized void worldRender(Entity entity, double camX, double camY, double camZ, PoseStack matrices, MultiBufferSource bufferSource, int light, float tickDelta) {
@@ -412,11 +590,15 @@ public class Avatar {
         renderer.translucent = false;
         renderer.glowing = false;
 
+        renderer.allowPartCulling = true;
+
         matrices.pushPose();
         matrices.translate(-camX, -camY, -camZ);
         matrices.scale(-1, -1, 1);
         renderer.renderSpecialParts();
         matrices.popPose();
+
+        renderer.allowPartCulling = false;
     }
 
     public void firstPersonWorldRender(Entity watcher, MultiBufferSource bufferSource, PoseStack matrices, Camera camera, float tickDelta) {
@@ -486,6 +668,75 @@ public class Avatar {
         if (renderer == null || !renderer.allowSkullRendering)
             return false;
 
+        stack.pushPose();
+
+        if (direction == null)
+            stack.translate(0.5d, 0d, 0.5d);
+        else
+            stack.translate((0.5d - direction.getStepX() * 0.25d), 0.25d, (0.5d - direction.getStepZ() * 0.25d));
+
+        stack.scale(-1f, -1f, 1f);
+        stack.mulPose(Vector3f.YP.rotationDegrees(yaw));
+
+        boolean result = canBatchSkulls() ? batchedSkullRender(stack, bufferSource, light) : renderSkullParts(stack, bufferSource, light);
+
+        stack.popPose();
+        return result;
+    }
+
+    //the skull render event can change the parts per skull, so only batch when nobody listens to it
+    private boolean canBatchSkulls() {
+        return Config.BATCH_SKULLS.asBool() && (luaRuntime == null || luaRuntime.events.SKULL_RENDER.__len() == 0) && !skullNeedsPose();
+    }
+
+    //camera parts are rotated from the pose they are rendered with, so a recording in skull space can't be moved to another skull
+    private boolean skullNeedsPose() {
+        int frame = AvatarManager.renderFrame;
+        if (poseCheckFrame != frame) {
+            poseCheckFrame = frame;
+            FiguraModelPart root = renderer.root;
+            skullNeedsPose = root != null && (
+                    hasCameraParts(root, PartFilterScheme.SKULL, PartFilterScheme.SKULL.initialValue(root)) ||
+                    hasCameraParts(root, PartFilterScheme.HEAD, PartFilterScheme.HEAD.initialValue(root))
+            );
+        }
+        return skullNeedsPose;
+    }
+
+    private static boolean hasCameraParts(FiguraModelPart part, PartFilterScheme scheme, Boolean result) {
+        if (result == null)
+            return false;
+        if (result && part.parentType == ParentType.Camera)
+            return true;
+
+        for (FiguraModelPart child : part.children)
+            if (hasCameraParts(child, scheme, scheme.test(child.parentType, result)))
+                return true;
+
+        return false;
+    }
+
+    private boolean batchedSkullRender(PoseStack stack, MultiBufferSource bufferSource, int light) {
+        //first skull of the frame, record it in skull space
+        int frame = AvatarManager.renderFrame;
+        if (!skullBatch.isRecorded(frame)) {
+            int oldComplexity = complexity;
+            skullBatch.begin(frame);
+            boolean result = renderSkullParts(new PoseStack(), skullBatch, SkullRenderBatch.RECORDING_LIGHT);
+            skullBatch.end(result, complexity - oldComplexity);
+            complexity = oldComplexity;
+        }
+
+        //over the complexity limit, let the normal render cut the parts
+        if (complexity + skullBatch.complexity > trust.get(TrustContainer.Trust.COMPLEXITY))
+            return renderSkullParts(stack, bufferSource, light);
+
+        complexity += skullBatch.complexity;
+        skullBatch.replay(stack, bufferSource, light);
+        return skullBatch.result;
+    }
+
+    private boolean renderSkullParts(PoseStack stack, MultiBufferSource bufferSource, int light) {
 //        int prevComplexity = remainingComplexity;
         int oldComplexity = complexity;
 
@@ -503,16 +754,7 @@ public class Avatar {
 
         stack.pushPose();
 
-        if (direction == null)
-            stack.translate(0.5d, 0d, 0.5d);
-        else
-            stack.translate((0.5d - direction.getStepX() * 0.25d), 0.25d, (0.5d - direction.getStepZ() * 0.25d));
-
-        stack.scale(-1f, -1f, 1f);
-        stack.mulPose(Vector3f.YP.rotationDegrees(yaw));
-
         renderer.renderSpecialParts();
-
         //hacky
 //        if (prevComplexity > remainingComplexity) {
         if (complexity > oldComplexity) {
@@ -591,10 +833,14 @@ public class Avatar {
      * also closes and stops this avatar sounds
      */
     public void clean() {
+        SoundAPI.getSoundEngine().figura$stopSound(owner, null);
+        cleanResources();
+    }
+
+    private void cleanResources() {
         if (renderer != null)
             renderer.clean();
 
-        SoundAPI.getSoundEngine().figura$stopSound(owner, null);
         for (SoundBuffer value : customSounds.values())
             value.releaseAlBuffer();
     }
@@ -632,6 +878,7 @@ public class Avatar {
         if (metadata.contains("autoScripts"))
             autoScripts = metadata.getList("autoScripts", Tag.TAG_STRING);
 
+        lastSeenTime = Util.getMillis();
         FiguraLuaRuntime luaRuntime = new FiguraLuaRuntime(this);
         if (renderer != null && renderer.root != null)
             luaRuntime.setGlobal("models", renderer.root);
@@ -649,6 +896,10 @@ public class Avatar {
         }
     }
 
+    private AvatarRenderer createRenderer() {
+        return Config.AVATAR_RENDERER.asInt() == 1 ? new VertexBufferAvatarRenderer(this) : new StackAvatarRenderer(this);
+    }
+
     private void loadAnimations() {
         if (!nbt.contains("animations"))
             return;
@@ -689,8 +940,15 @@ public class Avatar {
             return;
 
         CompoundTag root = nbt.getCompound("sounds");
+        CompoundTag previousRoot = previous == null || previous.nbt == null ? null : previous.nbt.getCompound("sounds");
         for (String key : root.getAllKeys()) {
             try {
+                //same sound as the previous avatar, keep its buffer
+                if (previousRoot != null && previous.customSounds.containsKey(key) && Arrays.equals(previousRoot.getByteArray(key), root.getByteArray(key))) {
+                    customSounds.put(key, previous.customSounds.remove(key));
+                    continue;
+                }
+
                 loadSound(key, root.getByteArray(key));
             } catch (Exception e) {
                 FiguraMod.LOGGER.warn("Failed to load custom sound \"" + key + "\"", e);
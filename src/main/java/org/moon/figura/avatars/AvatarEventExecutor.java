@@ -0,0 +1,110 @@
+package org.moon.figura.avatars;
+
+import org.moon.figura.FiguraMod;
+import org.moon.figura.config.Config;
+import org.moon.figura.lua.FiguraLuaRuntime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the world events (tick and world render) of every avatar at the same time, one worker per avatar script,
+ * when the "Parallel Scripts" config is enabled.
+ * The client thread waits for all of them before moving on, so the world is not changed while the scripts read it,
+ * and the avatar changes (parts, animations, nameplates) are seen by the next render.
+ * Changes outside of the avatar, shared with the other scripts (sounds, particles), are queued
+ * and run on the client thread after the scripts are done, in the order they were made.
+ * Values stored for the other avatars are read from a read only copy made before the scripts start, without the functions,
+ * and only for the avatars which were read by another one during the last run.
+ */
+public class AvatarEventExecutor {
+
+    private static final int THREADS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+    private static final ThreadLocal<Boolean> IS_WORKER = ThreadLocal.withInitial(() -> false);
+    private static final Queue<Runnable> CLIENT_TASKS = new ConcurrentLinkedQueue<>();
+
+    private static ExecutorService workers;
+
+    public static boolean isEnabled() {
+        return Config.PARALLEL_SCRIPTS.asBool();
+    }
+
+    /**
+     * Calls the event for every avatar, in parallel if enabled, returning only when all of them are done.
+     */
+    public static void forEach(Collection<Avatar> avatars, Consumer<Avatar> event) {
+        if (!isEnabled() || avatars.size() <= 1) {
+            avatars.forEach(event);
+            return;
+        }
+
+        //other avatars stored values are read from a copy, as each table is only safe to use on its own worker
+        //copied here, before the workers start, as it can't be copied later while its script may be writing it
+        List<FiguraLuaRuntime> runtimes = new ArrayList<>(avatars.size());
+        for (Avatar avatar : avatars) {
+            FiguraLuaRuntime runtime = avatar.luaRuntime;
+            if (runtime != null) {
+                runtime.avatar_meta.freezeStored();
+                runtimes.add(runtime);
+            }
+        }
+
+        ExecutorService executor = getWorkers();
+        CompletableFuture<?>[] futures = new CompletableFuture[avatars.size()];
+        int i = 0;
+        for (Avatar avatar : avatars)
+            futures[i++] = CompletableFuture.runAsync(() -> event.accept(avatar), executor);
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            //the avatar errors are already handled by tryCall, so this is a bug in the event itself
+            FiguraMod.LOGGER.error("Failed to run avatar event", e.getCause());
+        } finally {
+            for (FiguraLuaRuntime runtime : runtimes)
+                runtime.avatar_meta.unfreezeStored();
+            runClientTasks();
+        }
+    }
+
+    /**
+     * Runs the task now if on the client thread, otherwise queue it until all the avatar events are done.
+     */
+    public static void runOnClientThread(Runnable task) {
+        if (IS_WORKER.get())
+            CLIENT_TASKS.add(task);
+        else
+            task.run();
+    }
+
+    private static void runClientTasks() {
+        Runnable task;
+        while ((task = CLIENT_TASKS.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                FiguraMod.LOGGER.error("", e);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(THREADS, runnable -> {
+                Thread thread = new Thread(() -> {
+                    IS_WORKER.set(true);
+                    runnable.run();
+                }, "Figura Script Worker #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+}
@@ -33,6 +33,7 @@ public class AvatarManager {
 
     public static boolean localUploaded = true; //init as true :3
     public static boolean panic = false;
+    public static int renderFrame = 0;
 
     // -- avatar events -- //
 
@@ -55,11 +56,12 @@ public class AvatarManager {
         */
 
         //tick the avatar
-        for (Avatar avatar : LOADED_AVATARS.values())
-            avatar.tick();
+        AvatarEventExecutor.forEach(LOADED_AVATARS.values(), Avatar::tick);
     }
 
     public static void onWorldRender(float tickDelta) {
+        renderFrame++;
+
         while (!EVENT_QUEUE.isEmpty()) {
             AvatarIOEvent event = EVENT_QUEUE.poll();
             event.type.consumer.accept(event);
@@ -68,16 +70,14 @@ public class AvatarManager {
         if (panic)
             return;
 
-        for (Avatar avatar : LOADED_AVATARS.values())
-            avatar.worldRenderEvent(tickDelta);
+        AvatarEventExecutor.forEach(LOADED_AVATARS.values(), avatar -> avatar.worldRenderEvent(tickDelta));
     }
 
     public static void afterWorldRender(float tickDelta) {
         if (panic)
             return;
 
-        for (Avatar avatar : LOADED_AVATARS.values())
-            avatar.postWorldRenderEvent(tickDelta);
+        AvatarEventExecutor.forEach(LOADED_AVATARS.values(), avatar -> avatar.postWorldRenderEvent(tickDelta));
     }
 
     public static void applyAnimations() {
@@ -239,15 +239,18 @@ public class AvatarManager {
                 UUID id = event.owner;
                 Path path = event.path;
 
-                //clear
+                //clear, but keep the old avatar, so the new one can reuse its unchanged textures and sounds
+                Avatar previous = LOADED_AVATARS.remove(id);
                 CLEAR.consumer.accept(event);
 
                 //load
                 try {
                     Avatar avatar = new Avatar(id);
                     LOADED_AVATARS.put(id, avatar);
-                    avatar.load(LocalAvatarLoader.loadAvatar(path));
+                    avatar.load(LocalAvatarLoader.loadAvatar(path), previous);
                 } catch (Exception e) {
+                    if (previous != null)
+                        previous.clean();
                     FiguraMod.LOGGER.error("Failed to load avatar from " + path, e);
                     FiguraToast.sendToast(FiguraText.of("toast.load_error"), FiguraText.of("toast.load_error_l2"), FiguraToast.ToastType.ERROR);
                 }
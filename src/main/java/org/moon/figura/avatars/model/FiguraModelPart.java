@@ -16,6 +16,7 @@ import org.moon.figura.lua.docs.LuaMethodDoc;
 import org.moon.figura.lua.docs.LuaTypeDoc;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.math.matrix.FloatMat4;
 import org.moon.figura.math.vector.FiguraVec2;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.utils.LuaUtils;
@@ -35,12 +36,15 @@ public class FiguraModelPart {
     public FiguraModelPart parent;
 
     public final PartCustomization customization;
+    public final PartCustomization.MatrixCache matrixCache = new PartCustomization.MatrixCache();
     public ParentType parentType = ParentType.None;
 
     private final Map<String, FiguraModelPart> childCache = new HashMap<>();
     public final List<FiguraModelPart> children;
 
     public List<Integer> facesByTexture;
+    //first face of this part in each texture buffer
+    public int[] faceOffsetsByTexture;
 
     public Map<String, RenderTask> renderTasks = new HashMap<>();
 
@@ -52,6 +56,9 @@ public class FiguraModelPart {
 
     public final FiguraMat4 savedPartToWorldMat = FiguraMat4.of().scale(1d/16, 1d/16, 1d/16);
 
+    //bounds of this part own vertices, null if it has none
+    public FiguraVec3 boundsMin, boundsMax;
+
     public FiguraModelPart(String name, PartCustomization customization, List<FiguraModelPart> children) {
         this.name = name;
         this.customization = customization;
@@ -65,7 +72,19 @@ public class FiguraModelPart {
             if (remainingComplexity[0] <= 0)
                 return;
             remainingComplexity[0] -= facesByTexture.get(i);
-            avatarRenderer.pushFaces(i, facesByTexture.get(i) + Math.min(remainingComplexity[0], 0), remainingComplexity);
+            avatarRenderer.pushFaces(i, faceOffsetsByTexture[i], facesByTexture.get(i) + Math.min(remainingComplexity[0], 0), remainingComplexity);
+        }
+    }
+
+    /**
+     * Skips the vertices of this part, without drawing or charging any complexity for them.
+     */
+    public void skipVerticesImmediate(ImmediateAvatarRenderer avatarRenderer, int[] remainingComplexity) {
+        for (int i = 0; i < facesByTexture.size(); i++) {
+            if (remainingComplexity[0] <= 0)
+                return;
+            remainingComplexity[0] -= facesByTexture.get(i);
+            avatarRenderer.skipFaces(i, facesByTexture.get(i) + Math.min(remainingComplexity[0], 0), remainingComplexity);
         }
     }
 
@@ -109,10 +128,10 @@ public class FiguraModelPart {
         }
     }
 
-    public void applyExtraTransforms(FiguraMat4 currentTransforms) {
+    public void applyExtraTransforms(FloatMat4 currentTransforms) {
         if (parentType == ParentType.Camera) {
             if ((animationOverride & 1) != 1) {
-                FiguraMat4 prevPartToView = currentTransforms.inverted();
+                FiguraMat4 prevPartToView = currentTransforms.toFiguraMat4().invert();
                 prevPartToView.rightMultiply(FiguraMat4.of().rotateY(180));
                 prevPartToView.scale(1d/16, 1d/16, 1d/16);
                 FiguraVec3 piv = customization.getPivot();
@@ -130,6 +149,10 @@ public class FiguraModelPart {
 
     public void clean() {
         customization.free();
+        if (boundsMin != null) {
+            boundsMin.free();
+            boundsMax.free();
+        }
         for (FiguraModelPart child : children)
             child.clean();
     }
@@ -529,7 +552,7 @@ public class FiguraModelPart {
     public void setUV(Object x, Double y) {
         this.customization.uvMatrix.reset();
         FiguraVec2 uv = LuaUtils.parseVec2("setUV", x, y);
-        this.customization.uvMatrix.translate(uv.x, uv.y);
+        this.customization.uvMatrix.translate((float) uv.x, (float) uv.y);
         uv.free();
     }
 
@@ -553,7 +576,7 @@ public class FiguraModelPart {
         this.customization.uvMatrix.reset();
         FiguraVec2 uv = LuaUtils.parseVec2("setUVPixels", x, y);
         uv.divide(this.textureWidth, this.textureHeight);
-        this.customization.uvMatrix.translate(uv.x, uv.y);
+        this.customization.uvMatrix.translate((float) uv.x, (float) uv.y);
         uv.free();
     }
 
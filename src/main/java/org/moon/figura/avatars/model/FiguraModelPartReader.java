@@ -56,6 +56,10 @@ public class FiguraModelPartReader {
         customization.needsMatrixRecalculation = true;
 
         //Read vertex data
+        int[] builderStarts = new int[bufferBuilders.size()];
+        for (int i = 0; i < builderStarts.length; i++)
+            builderStarts[i] = bufferBuilders.get(i).getSize();
+
         List<Integer> facesByTexture = new ArrayList<>(0);
         if (hasCubeData(partCompound)) {
             readCuboid(facesByTexture, bufferBuilders, partCompound);
@@ -65,6 +69,7 @@ public class FiguraModelPartReader {
             readMesh(facesByTexture, bufferBuilders, partCompound);
             customization.partType = PartCustomization.PartType.MESH;
         }
+        FiguraVec3[] bounds = readBounds(bufferBuilders, builderStarts);
 
         //Read children
         ArrayList<FiguraModelPart> children = new ArrayList<>(0);
@@ -76,6 +81,13 @@ public class FiguraModelPartReader {
 
         FiguraModelPart result = new FiguraModelPart(name, customization, children);
         result.facesByTexture = facesByTexture;
+        result.faceOffsetsByTexture = new int[facesByTexture.size()];
+        for (int i = 0; i < facesByTexture.size(); i++)
+            result.faceOffsetsByTexture[i] = (i < builderStarts.length ? builderStarts[i] : 0) / 4;
+        if (bounds != null) {
+            result.boundsMin = bounds[0];
+            result.boundsMax = bounds[1];
+        }
         storeTexSize(result, textureSets);
         if (partCompound.contains("pt"))
             result.parentType = ParentType.valueOf(partCompound.getString("pt"));
@@ -122,6 +134,25 @@ public class FiguraModelPartReader {
         return result;
     }
 
+    //bounds of the part own vertices, in part space, used for culling
+    //must be called before reading the children, as they also add vertices to the builders
+    private static FiguraVec3[] readBounds(List<FiguraImmediateBuffer.Builder> builders, int[] builderStarts) {
+        FiguraVec3 min = FiguraVec3.of(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        FiguraVec3 max = FiguraVec3.of(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+
+        for (int i = 0; i < builders.size(); i++)
+            builders.get(i).growBounds(i < builderStarts.length ? builderStarts[i] : 0, min, max);
+
+        //no vertices
+        if (min.x > max.x) {
+            min.free();
+            max.free();
+            return null;
+        }
+
+        return new FiguraVec3[] {min, max};
+    }
+
     /**
      * There's a lot of obscure cases to test this on, so... something might go wrong with it, and I can't test everything.
      * Obviously I *think* it should work, and it has so far, but I still might be missing something.
@@ -5,11 +5,15 @@ import com.mojang.datafixers.util.Pair;
 import org.moon.figura.avatars.model.rendering.texture.RenderTypes;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.utils.caching.CacheStack;
 import org.moon.figura.utils.caching.CacheUtils;
 import org.moon.figura.utils.caching.CachedType;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class PartCustomization implements CachedType<PartCustomization> {
 
     //-- Matrix thingies --//
@@ -20,13 +24,22 @@ public class PartCustomization implements CachedType<PartCustomization> {
      */
     public PartType partType = PartType.GROUP;
 
-    public FiguraMat4 positionMatrix = FiguraMat4.of();
-    public FiguraMat3 uvMatrix = FiguraMat3.of();
-    public FiguraMat3 normalMatrix = FiguraMat3.of();
+    //float matrices owned by this customization, converted to FiguraMat only when scripts ask for them
+    public final FloatMat4 positionMatrix = new FloatMat4();
+    public final FloatMat3 uvMatrix = new FloatMat3();
+    public final FloatMat3 normalMatrix = new FloatMat3();
 
     public boolean needsMatrixRecalculation = true;
     public Boolean visible = null;
 
+    //-- Matrix caching --//
+    //every actual change of this part matrices gets a new version
+    private long matrixVersion = nextVersion();
+    //version of the matrices composed on the stack, the same version means the same matrices
+    private long composedVersion = nextVersion();
+    private final double[] lastTransforms = new double[13];
+    private boolean hasTransformSnapshot = false;
+
     private FiguraVec3 position = FiguraVec3.of();
     private FiguraVec3 rotation = FiguraVec3.of();
     private FiguraVec3 scale = FiguraVec3.of(1, 1, 1);
@@ -58,72 +71,91 @@ public class PartCustomization implements CachedType<PartCustomization> {
 
     /**
      * Recalculates the matrix if necessary.
+     * Setting the same transforms again (like vanilla parents do every frame) does not count as a change,
+     * so the matrix version is only bumped when the resulting matrices would actually differ.
      */
     public void recalculate() {
-        if (needsMatrixRecalculation) {
-            positionMatrix.reset();
-
-            //Position the pivot point at 0, 0, 0, and translate the part
-            positionMatrix.translate(
-                    offsetPos.x - pivot.x - offsetPivot.x,
-                    offsetPos.y - pivot.y - offsetPivot.y,
-                    offsetPos.z - pivot.z - offsetPivot.z
-            );
-
-            //Scale the model part around the pivot
-            positionMatrix.scale(
-                    scale.x * animScale.x,
-                    scale.y * animScale.y,
-                    scale.z * animScale.z
-            );
-
-            //Rotate the model part around the pivot
-            if (partType == PartType.MESH) {
-                positionMatrix.rotateZ(rotation.z + offsetRot.z + animRot.z);
-                positionMatrix.rotateY(rotation.y + offsetRot.y + animRot.y);
-                positionMatrix.rotateX(rotation.x + offsetRot.x + animRot.x);
-            } else {
-                positionMatrix.rotateZYX(
-                        rotation.x + offsetRot.x + animRot.x,
-                        rotation.y + offsetRot.y + animRot.y,
-                        rotation.z + offsetRot.z + animRot.z
-                );
-            }
+        if (!needsMatrixRecalculation)
+            return;
+        needsMatrixRecalculation = false;
 
-            //Undo the effects of the pivot translation
-            positionMatrix.translate(
-                    position.x + animPos.x + pivot.x + offsetPivot.x,
-                    position.y + animPos.y + pivot.y + offsetPivot.y,
-                    position.z + animPos.z + pivot.z + offsetPivot.z
-            );
-
-            //Set up the normal matrix as well
-            normalMatrix.reset();
-            double x = scale.x * animScale.x;
-            double y = scale.y * animScale.y;
-            double z = scale.z * animScale.z;
-            double c = Math.cbrt(x * y * z);
-            normalMatrix.scale(
-                    c == 0 && x == 0 ? 1 : c / x,
-                    c == 0 && y == 0 ? 1 : c / y,
-                    c == 0 && z == 0 ? 1 : c / z
-            );
-
-            //Perform rotation of normals
-            if (partType == PartType.MESH) {
-                normalMatrix.rotateZ(rotation.z + offsetRot.z + animRot.z);
-                normalMatrix.rotateY(rotation.y + offsetRot.y + animRot.y);
-                normalMatrix.rotateX(rotation.x + offsetRot.x + animRot.x);
-            } else {
-                normalMatrix.rotateZYX(
-                        rotation.x + offsetRot.x + animRot.x,
-                        rotation.y + offsetRot.y + animRot.y,
-                        rotation.z + offsetRot.z + animRot.z
-                );
-            }
+        //the effective transforms
+        double tx = offsetPos.x - pivot.x - offsetPivot.x;
+        double ty = offsetPos.y - pivot.y - offsetPivot.y;
+        double tz = offsetPos.z - pivot.z - offsetPivot.z;
+        double sx = scale.x * animScale.x;
+        double sy = scale.y * animScale.y;
+        double sz = scale.z * animScale.z;
+        double rx = rotation.x + offsetRot.x + animRot.x;
+        double ry = rotation.y + offsetRot.y + animRot.y;
+        double rz = rotation.z + offsetRot.z + animRot.z;
+        double px = position.x + animPos.x + pivot.x + offsetPivot.x;
+        double py = position.y + animPos.y + pivot.y + offsetPivot.y;
+        double pz = position.z + animPos.z + pivot.z + offsetPivot.z;
+        double type = partType.ordinal();
+
+        if (hasTransformSnapshot &&
+                lastTransforms[0] == tx && lastTransforms[1] == ty && lastTransforms[2] == tz &&
+                lastTransforms[3] == sx && lastTransforms[4] == sy && lastTransforms[5] == sz &&
+                lastTransforms[6] == rx && lastTransforms[7] == ry && lastTransforms[8] == rz &&
+                lastTransforms[9] == px && lastTransforms[10] == py && lastTransforms[11] == pz &&
+                lastTransforms[12] == type)
+            return;
+
+        lastTransforms[0] = tx; lastTransforms[1] = ty; lastTransforms[2] = tz;
+        lastTransforms[3] = sx; lastTransforms[4] = sy; lastTransforms[5] = sz;
+        lastTransforms[6] = rx; lastTransforms[7] = ry; lastTransforms[8] = rz;
+        lastTransforms[9] = px; lastTransforms[10] = py; lastTransforms[11] = pz;
+        lastTransforms[12] = type;
+        hasTransformSnapshot = true;
+
+        positionMatrix.reset();
+
+        //Position the pivot point at 0, 0, 0, and translate the part
+        positionMatrix.translate((float) tx, (float) ty, (float) tz);
+
+        //Scale the model part around the pivot
+        positionMatrix.scale((float) sx, (float) sy, (float) sz);
+
+        //Rotate the model part around the pivot
+        if (partType == PartType.MESH) {
+            positionMatrix.rotateZ(rz);
+            positionMatrix.rotateY(ry);
+            positionMatrix.rotateX(rx);
+        } else {
+            positionMatrix.rotateZYX(rx, ry, rz);
+        }
 
-            needsMatrixRecalculation = false;
+        //Undo the effects of the pivot translation
+        positionMatrix.translate((float) px, (float) py, (float) pz);
+
+        //Set up the normal matrix as well
+        normalMatrix.reset();
+        double c = Math.cbrt(sx * sy * sz);
+        normalMatrix.scale(
+                (float) (c == 0 && sx == 0 ? 1 : c / sx),
+                (float) (c == 0 && sy == 0 ? 1 : c / sy),
+                (float) (c == 0 && sz == 0 ? 1 : c / sz)
+        );
+
+        //Perform rotation of normals
+        if (partType == PartType.MESH) {
+            normalMatrix.rotateZ(rz);
+            normalMatrix.rotateY(ry);
+            normalMatrix.rotateX(rx);
+        } else {
+            normalMatrix.rotateZYX(rx, ry, rz);
         }
+
+        matrixVersion = nextVersion();
+    }
+
+    /**
+     * Forces the next recalculate() to rebuild the matrices, for when they were touched directly.
+     */
+    public void markMatrixDirty() {
+        needsMatrixRecalculation = true;
+        hasTransformSnapshot = false;
     }
 
     public void setPos(FiguraVec3 pos) {
@@ -233,25 +265,27 @@ public class PartCustomization implements CachedType<PartCustomization> {
         normalMatrix.set(temp);
         temp.free();
         needsMatrixRecalculation = false;
+        hasTransformSnapshot = false;
+        matrixVersion = nextVersion();
     }
 
     public void setPositionMatrix(FiguraMat4 matrix) {
         positionMatrix.set(matrix);
+        hasTransformSnapshot = false;
+        matrixVersion = nextVersion();
     }
 
     public void setNormalMatrix(FiguraMat3 matrix) {
         normalMatrix.set(matrix);
+        hasTransformSnapshot = false;
+        matrixVersion = nextVersion();
     }
 
     public FiguraMat4 getPositionMatrix() {
-        FiguraMat4 result = FiguraMat4.of();
-        result.set(positionMatrix);
-        return result;
+        return positionMatrix.toFiguraMat4();
     }
     public FiguraMat3 getNormalMatrix() {
-        FiguraMat3 result = FiguraMat3.of();
-        result.set(normalMatrix);
-        return result;
+        return normalMatrix.toFiguraMat3();
     }
 
     //-- Render type thingies --//
@@ -275,9 +309,9 @@ public class PartCustomization implements CachedType<PartCustomization> {
     private static final CacheUtils.Cache<PartCustomization> CACHE = CacheUtils.getCache(PartCustomization::new);
     private PartCustomization() {}
     public PartCustomization reset() {
-        positionMatrix = FiguraMat4.of();
-        uvMatrix = FiguraMat3.of();
-        normalMatrix = FiguraMat3.of();
+        positionMatrix.reset();
+        uvMatrix.reset();
+        normalMatrix.reset();
         partType = PartType.GROUP;
         position = FiguraVec3.of();
         rotation = FiguraVec3.of();
@@ -293,15 +327,15 @@ public class PartCustomization implements CachedType<PartCustomization> {
         alpha = null;
         light = null;
         needsMatrixRecalculation = false;
+        hasTransformSnapshot = false;
+        matrixVersion = nextVersion();
+        composedVersion = nextVersion();
         visible = null;
         primaryTexture = Pair.of(null, null);
         secondaryTexture = Pair.of(null, null);
         return this;
     }
     public void free() {
-        positionMatrix.free();
-        uvMatrix.free();
-        normalMatrix.free();
         position.free();
         rotation.free();
         scale.free();
@@ -319,13 +353,25 @@ public class PartCustomization implements CachedType<PartCustomization> {
         public Stack() {
             this(CACHE);
         }
+        private MatrixCache matrixCache;
+
         public Stack(CacheUtils.Cache<PartCustomization> cache) {
             super(cache);
         }
 
+        /**
+         * Same as push, but the composed matrices are taken from the given cache when neither
+         * the pushed customization nor the current top of the stack changed since the last push with it.
+         */
+        public void push(PartCustomization modifierArg, MatrixCache matrixCache) {
+            this.matrixCache = matrixCache;
+            push(modifierArg);
+            this.matrixCache = null;
+        }
+
         @Override
         protected void modify(PartCustomization valueToModify, PartCustomization modifierArg) {
-            valueToModify.modify(modifierArg);
+            valueToModify.modify(modifierArg, matrixCache);
         }
         @Override
         protected void copy(PartCustomization from, PartCustomization to) {
@@ -345,6 +391,7 @@ public class PartCustomization implements CachedType<PartCustomization> {
             to.light = from.light;
             to.overlay = from.overlay;
             to.needsMatrixRecalculation = from.needsMatrixRecalculation;
+            to.composedVersion = from.composedVersion;
             to.visible = from.visible;
             to.setPrimaryRenderType(from.primaryRenderType);
             to.setSecondaryRenderType(from.secondaryRenderType);
@@ -354,10 +401,29 @@ public class PartCustomization implements CachedType<PartCustomization> {
     }
 
     //Modify this object using the information contained in the other object
-    private void modify(PartCustomization other) {
-        positionMatrix.rightMultiply(other.positionMatrix);
+    private void modify(PartCustomization other, MatrixCache cache) {
+        int slot = cache == null ? -1 : cache.find(composedVersion);
+        if (slot != -1 && cache.partVersions[slot] == other.matrixVersion) {
+            //nothing changed, reuse the last result
+            positionMatrix.set(cache.positionMatrices[slot]);
+            normalMatrix.set(cache.normalMatrices[slot]);
+            composedVersion = cache.composedVersions[slot];
+        } else {
+            long parentVersion = composedVersion;
+            positionMatrix.rightMultiply(other.positionMatrix);
+            normalMatrix.rightMultiply(other.normalMatrix);
+            composedVersion = nextVersion();
+
+            if (cache != null) {
+                slot = cache.slotFor(parentVersion);
+                cache.positionMatrices[slot].set(positionMatrix);
+                cache.normalMatrices[slot].set(normalMatrix);
+                cache.parentVersions[slot] = parentVersion;
+                cache.partVersions[slot] = other.matrixVersion;
+                cache.composedVersions[slot] = composedVersion;
+            }
+        }
         uvMatrix.rightMultiply(other.uvMatrix);
-        normalMatrix.rightMultiply(other.normalMatrix);
 
         if (other.primaryRenderType != null)
             setPrimaryRenderType(other.primaryRenderType);
@@ -388,12 +454,100 @@ public class PartCustomization implements CachedType<PartCustomization> {
             secondaryTexture = other.secondaryTexture;
     }
 
+    @Override
+    public String snapshot() {
+        return partType + ";" + positionMatrix + ";" + uvMatrix + ";" + normalMatrix + ";" + visible + ";" +
+                position.snapshot() + rotation.snapshot() + scale.snapshot() + pivot.snapshot() +
+                offsetPivot.snapshot() + offsetPos.snapshot() + offsetRot.snapshot() +
+                animPos.snapshot() + animRot.snapshot() + animScale.snapshot() + color.snapshot() +
+                alpha + ";" + light + ";" + overlay + ";" + primaryRenderType + ";" + secondaryRenderType + ";" +
+                primaryTexture + ";" + secondaryTexture;
+    }
+
+    //customizations are created and changed from the loading threads, the render thread and the script workers
+    private static final AtomicLong LAST_VERSION = new AtomicLong();
+
+    private static long nextVersion() {
+        return LAST_VERSION.incrementAndGet();
+    }
+
+    /**
+     * Holds the last matrices a part had once composed on the customization stack,
+     * so unchanged subtrees can skip the matrix multiplications.
+     * An avatar is rendered by several passes each frame (entity, first person, world, skulls...),
+     * so a few results are kept, one per parent (composed) version.
+     */
+    public static class MatrixCache {
+
+        private final int slots;
+        private final FloatMat4[] positionMatrices;
+        private final FloatMat3[] normalMatrices;
+        private final long[] parentVersions, partVersions, composedVersions;
+        private int nextSlot = 0;
+
+        public MatrixCache() {
+            this(4);
+        }
+
+        public MatrixCache(int slots) {
+            this.slots = slots;
+            positionMatrices = new FloatMat4[slots];
+            normalMatrices = new FloatMat3[slots];
+            parentVersions = new long[slots];
+            partVersions = new long[slots];
+            composedVersions = new long[slots];
+            for (int i = 0; i < slots; i++) {
+                positionMatrices[i] = new FloatMat4();
+                normalMatrices[i] = new FloatMat3();
+                parentVersions[i] = partVersions[i] = composedVersions[i] = -1;
+            }
+        }
+
+        private int find(long parentVersion) {
+            for (int i = 0; i < slots; i++) {
+                if (parentVersions[i] == parentVersion)
+                    return i;
+            }
+            return -1;
+        }
+
+        //the slot used for this parent, or the oldest one
+        private int slotFor(long parentVersion) {
+            int slot = find(parentVersion);
+            if (slot != -1)
+                return slot;
+            slot = nextSlot;
+            nextSlot = (nextSlot + 1) % slots;
+            return slot;
+        }
+
+        /**
+         * Stack roots are built from scratch every frame, so compare them by value instead.
+         * If the root matrices are the same as some recent root, the root keeps that version,
+         * and with it every cached part below it stays valid.
+         */
+        public void matchRoot(PartCustomization root) {
+            for (int i = 0; i < slots; i++) {
+                if (composedVersions[i] != -1 && positionMatrices[i].equals(root.positionMatrix) && normalMatrices[i].equals(root.normalMatrix)) {
+                    root.composedVersion = composedVersions[i];
+                    return;
+                }
+            }
+
+            int slot = nextSlot;
+            nextSlot = (nextSlot + 1) % slots;
+            positionMatrices[slot].set(root.positionMatrix);
+            normalMatrices[slot].set(root.normalMatrix);
+            composedVersions[slot] = root.composedVersion;
+        }
+    }
+
     public static final PoseStack GLOBAL_CUSTOMIZATION_POSE_STACK = new PoseStack();
 
     public PoseStack copyIntoGlobalPoseStack() {
         recalculate();
-        positionMatrix.copyDataTo(GLOBAL_CUSTOMIZATION_POSE_STACK.last().pose());
-        normalMatrix.copyDataTo(GLOBAL_CUSTOMIZATION_POSE_STACK.last().normal());
+        positionMatrix.copyTo(GLOBAL_CUSTOMIZATION_POSE_STACK.last().pose());
+        normalMatrix.copyTo(GLOBAL_CUSTOMIZATION_POSE_STACK.last().normal());
         return GLOBAL_CUSTOMIZATION_POSE_STACK;
     }
 
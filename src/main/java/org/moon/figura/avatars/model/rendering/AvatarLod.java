@@ -0,0 +1,68 @@
+package org.moon.figura.avatars.model.rendering;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
+import org.moon.figura.config.Config;
+
+/**
+ * Level of detail of an avatar, chosen from how tall its entity is on the screen, in pixels.
+ * Once a tier is lowered, the entity needs to be a bit bigger than the threshold to go back up,
+ * so avatars right on the edge don't keep swapping every frame.
+ */
+public class AvatarLod {
+
+    private static final double HYSTERESIS = 0.2;
+    //on the reduced tier, parts smaller than this on the screen are skipped
+    public static final float REDUCED_PART_PIXELS = 2f;
+
+    private Tier tier = Tier.FULL;
+
+    public Tier getTier() {
+        return tier;
+    }
+
+    public Tier update(Entity entity, float delta) {
+        int reducedSize = Config.LOD_REDUCED_SIZE.asInt();
+        int vanillaSize = Config.LOD_VANILLA_SIZE.asInt();
+
+        if (reducedSize <= 0 && vanillaSize <= 0)
+            return tier = Tier.FULL;
+
+        double size = projectedSize(entity, delta);
+        double up = 1 + HYSTERESIS;
+
+        if (vanillaSize > 0 && size < vanillaSize * (tier == Tier.VANILLA ? up : 1))
+            tier = Tier.VANILLA;
+        else if (reducedSize > 0 && size < reducedSize * (tier != Tier.FULL ? up : 1))
+            tier = Tier.REDUCED;
+        else
+            tier = Tier.FULL;
+
+        return tier;
+    }
+
+    /**
+     * Roughly how many pixels tall the entity is on the screen.
+     */
+    public static double projectedSize(Entity entity, float delta) {
+        Minecraft minecraft = Minecraft.getInstance();
+        Vec3 camera = minecraft.gameRenderer.getMainCamera().getPosition();
+        double distance = camera.distanceTo(entity.getPosition(delta));
+        if (distance < 1e-3)
+            return Double.MAX_VALUE;
+
+        double fov = Math.toRadians(minecraft.options.fov().get());
+        double screenHeight = minecraft.getWindow().getHeight();
+        return entity.getBbHeight() / (2 * distance * Math.tan(fov / 2)) * screenHeight;
+    }
+
+    public enum Tier {
+        //everything
+        FULL,
+        //no render tasks, no secondary (emissive) layers and no parts smaller than a couple of pixels
+        REDUCED,
+        //the avatar is not rendered at all, leaving the vanilla model in its place
+        VANILLA
+    }
+}
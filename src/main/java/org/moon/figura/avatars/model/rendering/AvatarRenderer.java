@@ -22,7 +22,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Mainly exists as an abstract superclass for VAO-based and
- * immediate mode avatar renderers. (VAO-based don't exist yet)
+ * immediate mode avatar renderers. (see VertexBufferAvatarRenderer for the retained one)
  */
 public abstract class AvatarRenderer {
 
@@ -52,6 +52,12 @@ public abstract class AvatarRenderer {
     public boolean allowRenderTasks = true;
     public boolean allowSkullRendering = true;
     public boolean allowPivotParts = true;
+    public boolean allowSecondaryTextures = true;
+    public boolean allowPartCulling = false;
+    //parts smaller than this on the screen, in pixels, are not drawn, 0 draws them all
+    public float minPartPixels = 0f;
+    //when not null, vertices are collected there and transformed in parallel at the end of the render
+    public ParallelVertexBatch vertexBatch;
 
     public AvatarRenderer(Avatar avatar) {
         this.avatar = avatar;
@@ -1,6 +1,8 @@
 package org.moon.figura.avatars.model.rendering;
 
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.blaze3d.vertex.VertexFormat;
 import com.mojang.datafixers.util.Pair;
 import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import net.minecraft.client.renderer.RenderType;
@@ -10,12 +12,15 @@ import org.moon.figura.avatars.model.PartCustomization;
 import org.moon.figura.avatars.model.rendering.texture.FiguraTexture;
 import org.moon.figura.avatars.model.rendering.texture.FiguraTextureSet;
 import org.moon.figura.avatars.model.rendering.texture.RenderTypes;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
 import org.moon.figura.math.vector.FiguraVec2;
 import org.moon.figura.math.vector.FiguraVec3;
-import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.utils.caching.CacheStack;
 
 import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 public class FiguraImmediateBuffer {
 
@@ -23,9 +28,8 @@ public class FiguraImmediateBuffer {
     private final CacheStack<PartCustomization, PartCustomization> customizationStack;
     public final FloatBuffer positions, uvs, normals;
 
-    private static final FiguraVec4 pos = FiguraVec4.of();
-    private static final FiguraVec3 normal = FiguraVec3.of();
-    private static final FiguraVec3 uv = FiguraVec3.of(0, 0, 1);
+    //retained gpu copies of our geometry, keyed by the first face of the segment
+    private final Map<Integer, FiguraVertexBuffer> vertexBuffers = new HashMap<>();
 
     private FiguraImmediateBuffer(FloatArrayList posList, FloatArrayList uvList, FloatArrayList normalList, FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
         positions = BufferUtils.createFloatBuffer(posList.size());
@@ -40,68 +44,109 @@ public class FiguraImmediateBuffer {
 
     public void clean() {
         textureSet.clean();
+        for (FiguraVertexBuffer vertexBuffer : vertexBuffers.values())
+            vertexBuffer.close();
+        vertexBuffers.clear();
     }
 
     public void uploadTexIfNeeded() {
         textureSet.uploadIfNeeded();
     }
 
-    public void markBuffers() {
-        positions.mark();
-        uvs.mark();
-        normals.mark();
-    }
-
-    public void resetBuffers() {
-        positions.reset();
-        uvs.reset();
-        normals.reset();
-    }
-
-    public void clearBuffers() {
-        positions.clear();
-        uvs.clear();
-        normals.clear();
-    }
-
     /**
-     * Advances the buffers without drawing those vertices. Also refunds complexity for those faces.
+     * Skips those vertices without drawing them. Also refunds complexity for those faces.
      * @param faceCount The number of faces to skip
      * @param remainingComplexity The complexity holder, so the value can update
      */
-    public void advanceBuffers(int faceCount, int[] remainingComplexity) {
-        positions.position(positions.position() + faceCount * 12);
-        uvs.position(uvs.position() + faceCount * 8);
-        normals.position(normals.position() + faceCount * 12);
-
+    public void skipVertices(int faceCount, int[] remainingComplexity) {
         //Refund complexity for invisible parts
         remainingComplexity[0] += faceCount;
     }
 
-    public void pushVertices(AvatarRenderer renderer, int faceCount, int[] remainingComplexity) {
+    /**
+     * Pushes the faces of a segment of this buffer, the segment offsets are stored per part at load,
+     * so there is no cursor and parts can be pushed in any order.
+     * @param startFace The first face of the segment
+     * @param faceCount The number of faces in the segment
+     */
+    public void pushVertices(AvatarRenderer renderer, int startFace, int faceCount, int[] remainingComplexity) {
         //Handle cases that we can quickly
         if (faceCount == 0)
             return;
 
         PartCustomization customization = customizationStack.peek();
         if (!customization.visible) {
-            advanceBuffers(faceCount, remainingComplexity);
+            skipVertices(faceCount, remainingComplexity);
+            return;
+        }
+
+        RenderType primary = this.getTexture(renderer, customization.getPrimaryRenderType(), customization.primaryTexture, textureSet.mainTex);
+        RenderType secondary = renderer.allowSecondaryTextures ? this.getTexture(renderer, customization.getSecondaryRenderType(), customization.secondaryTexture, textureSet.emissiveTex) : null;
+
+        if (primary == null && secondary == null) {
+            skipVertices(faceCount, remainingComplexity);
+            return;
+        }
+
+        if (primary != null)
+            push(renderer, primary, startFace, faceCount);
+        if (secondary != null)
+            push(renderer, secondary, startFace, faceCount);
+    }
+
+    private void push(AvatarRenderer renderer, RenderType renderType, int startFace, int faceCount) {
+        if (renderer.vertexBatch != null)
+            renderer.vertexBatch.add(renderType, this, customizationStack.peek(), startFace, faceCount, textureSet.getWidth(), textureSet.getHeight());
+        else
+            pushToConsumer(renderer.bufferSource.getBuffer(renderType), startFace, faceCount);
+    }
+
+    /**
+     * Same as pushVertices, but queues the faces from a retained GPU buffer, uploaded on the first time
+     * this segment is seen, instead of transforming and pushing every vertex to a consumer.
+     * Parts with a custom uv matrix, or render types which are not in the entity vertex format,
+     * are still pushed the immediate way.
+     */
+    public void pushVerticesRetained(AvatarRenderer renderer, RetainedDrawBatch batch, int startFace, int faceCount, int[] remainingComplexity) {
+        if (faceCount == 0)
+            return;
+
+        PartCustomization customization = customizationStack.peek();
+        if (!customization.visible) {
+            skipVertices(faceCount, remainingComplexity);
+            return;
+        }
+
+        if (!customization.uvMatrix.isIdentity()) {
+            pushVertices(renderer, startFace, faceCount, remainingComplexity);
             return;
         }
 
         RenderType primary = this.getTexture(renderer, customization.getPrimaryRenderType(), customization.primaryTexture, textureSet.mainTex);
-        RenderType secondary = this.getTexture(renderer, customization.getSecondaryRenderType(), customization.secondaryTexture, textureSet.emissiveTex);
+        RenderType secondary = renderer.allowSecondaryTextures ? this.getTexture(renderer, customization.getSecondaryRenderType(), customization.secondaryTexture, textureSet.emissiveTex) : null;
 
-        if (primary != null) {
-            if (secondary != null)
-                markBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(primary), faceCount);
+        if (primary == null && secondary == null) {
+            skipVertices(faceCount, remainingComplexity);
+            return;
         }
-        if (secondary != null) {
-            if (primary != null)
-                resetBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(secondary), faceCount);
+
+        if (primary != null)
+            pushRetained(renderer, batch, primary, startFace, faceCount);
+        if (secondary != null)
+            pushRetained(renderer, batch, secondary, startFace, faceCount);
+    }
+
+    private void pushRetained(AvatarRenderer renderer, RetainedDrawBatch batch, RenderType renderType, int startFace, int faceCount) {
+        if (renderType.format() != DefaultVertexFormat.NEW_ENTITY || renderType.mode() != VertexFormat.Mode.QUADS) {
+            push(renderer, renderType, startFace, faceCount);
+            return;
         }
+
+        FiguraVertexBuffer vertexBuffer = vertexBuffers.computeIfAbsent(startFace, i -> new FiguraVertexBuffer());
+        if (vertexBuffer.needsUpload(faceCount))
+            vertexBuffer.upload(positions, uvs, normals, startFace, faceCount, textureSet.getWidth(), textureSet.getHeight());
+
+        batch.add(renderType, vertexBuffer, customizationStack.peek());
     }
 
     private RenderType getTexture(AvatarRenderer renderer, RenderTypes types, Pair<String, String> texture, FiguraTexture figuraTexture) {
@@ -121,45 +166,78 @@ public class FiguraImmediateBuffer {
         return types == null ? null : types.get(id);
     }
 
-    private void pushToConsumer(VertexConsumer consumer, int faceCount) {
+    private void pushToConsumer(VertexConsumer consumer, int startFace, int faceCount) {
         PartCustomization customization = customizationStack.peek();
 
-        FiguraVec3 uvFixer = FiguraVec3.of();
-        uvFixer.set(textureSet.getWidth(), textureSet.getHeight(), 1); //Dividing by this makes uv 0 to 1
-
-        for (int i = 0; i < faceCount*4; i++) {
-
-            pos.set(positions.get(), positions.get(), positions.get(), 1);
-            pos.transform(customization.positionMatrix);
-            normal.set(normals.get(), normals.get(), normals.get());
-            normal.transform(customization.normalMatrix);
-            uv.set(uvs.get(), uvs.get(), 1);
-            uv.divide(uvFixer);
-            uv.transform(customization.uvMatrix);
+        //hoist the matrices out of the vertex loop
+        FloatMat4 pos = customization.positionMatrix;
+        float p11 = pos.v11, p12 = pos.v12, p13 = pos.v13, p14 = pos.v14;
+        float p21 = pos.v21, p22 = pos.v22, p23 = pos.v23, p24 = pos.v24;
+        float p31 = pos.v31, p32 = pos.v32, p33 = pos.v33, p34 = pos.v34;
+
+        FloatMat3 normal = customization.normalMatrix;
+        float n11 = normal.v11, n12 = normal.v12, n13 = normal.v13;
+        float n21 = normal.v21, n22 = normal.v22, n23 = normal.v23;
+        float n31 = normal.v31, n32 = normal.v32, n33 = normal.v33;
+
+        //dividing by the texture size makes uv 0 to 1, so fold it into the uv matrix
+        FloatMat3 uv = customization.uvMatrix;
+        float width = textureSet.getWidth(), height = textureSet.getHeight();
+        float u11 = uv.v11 / width, u12 = uv.v12 / height, u13 = uv.v13;
+        float u21 = uv.v21 / width, u22 = uv.v22 / height, u23 = uv.v23;
+
+        float r = (float) customization.color.x;
+        float g = (float) customization.color.y;
+        float b = (float) customization.color.z;
+        float a = customization.alpha;
+        int overlay = customization.overlay;
+        int light = customization.light;
+
+        //bulk read this segment
+        int vertexCount = faceCount * 4;
+        int startVertex = startFace * 4;
+        ensureScratchSize(vertexCount);
+        positions.get(startVertex * 3, posScratch, 0, vertexCount * 3);
+        uvs.get(startVertex * 2, uvScratch, 0, vertexCount * 2);
+        normals.get(startVertex * 3, normalScratch, 0, vertexCount * 3);
+
+        for (int i = 0; i < vertexCount; i++) {
+            int i3 = i * 3, i2 = i * 2;
+
+            float x = posScratch[i3], y = posScratch[i3 + 1], z = posScratch[i3 + 2];
+            float nx = normalScratch[i3], ny = normalScratch[i3 + 1], nz = normalScratch[i3 + 2];
+            float u = uvScratch[i2], v = uvScratch[i2 + 1];
 
             consumer.vertex(
-                    (float) pos.x,
-                    (float) pos.y,
-                    (float) pos.z,
+                    p11 * x + p12 * y + p13 * z + p14,
+                    p21 * x + p22 * y + p23 * z + p24,
+                    p31 * x + p32 * y + p33 * z + p34,
 
-                    (float) customization.color.x,
-                    (float) customization.color.y,
-                    (float) customization.color.z,
-                    customization.alpha,
+                    r, g, b, a,
 
-                    (float) uv.x,
-                    (float) uv.y,
+                    u11 * u + u12 * v + u13,
+                    u21 * u + u22 * v + u23,
 
-                    customization.overlay,
-                    customization.light,
+                    overlay,
+                    light,
 
-                    (float) normal.x,
-                    (float) normal.y,
-                    (float) normal.z
+                    n11 * nx + n12 * ny + n13 * nz,
+                    n21 * nx + n22 * ny + n23 * nz,
+                    n31 * nx + n32 * ny + n33 * nz
             );
         }
+    }
 
-        uvFixer.free();
+    //only used from the render thread, so they can be shared between all buffers
+    private static float[] posScratch = new float[0], uvScratch = new float[0], normalScratch = new float[0];
+
+    private static void ensureScratchSize(int vertexCount) {
+        if (posScratch.length >= vertexCount * 3)
+            return;
+
+        posScratch = new float[vertexCount * 3];
+        uvScratch = new float[vertexCount * 2];
+        normalScratch = new float[vertexCount * 3];
     }
 
     public static Builder builder() {
@@ -195,6 +273,19 @@ public class FiguraImmediateBuffer {
             return size;
         }
 
+        /**
+         * Grows the given bounds to fit the vertices from the given index onwards.
+         */
+        public void growBounds(int fromVertex, FiguraVec3 min, FiguraVec3 max) {
+            for (int i = fromVertex; i < size; i++) {
+                double x = positions.getFloat(i * 3);
+                double y = positions.getFloat(i * 3 + 1);
+                double z = positions.getFloat(i * 3 + 2);
+                min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+                max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+            }
+        }
+
         public FiguraImmediateBuffer build(FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
             return new FiguraImmediateBuffer(positions, uvs, normals, textureSet, customizationStack);
         }
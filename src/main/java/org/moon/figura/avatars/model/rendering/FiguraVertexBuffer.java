@@ -0,0 +1,77 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.FloatBuffer;
+
+/**
+ * One segment of static avatar geometry (the faces of a single part, for a single texture),
+ * uploaded to the GPU once and then drawn every frame only by changing the shader uniforms (see RetainedDrawBatch).
+ * Light and overlay are constant vertex attributes set per draw, so changing them never uploads again.
+ */
+public class FiguraVertexBuffer {
+
+    private static final BufferBuilder UPLOAD_BUILDER = new BufferBuilder(256);
+
+    //attribute indices of the overlay (UV1) and light (UV2) in the NEW_ENTITY format and the entity shaders
+    private static final int OVERLAY_ATTRIBUTE = 3;
+    private static final int LIGHT_ATTRIBUTE = 4;
+
+    private final VertexBuffer vertexBuffer = new VertexBuffer();
+
+    private int faceCount = -1;
+
+    public boolean needsUpload(int faceCount) {
+        return this.faceCount != faceCount;
+    }
+
+    /**
+     * Uploads the geometry only, the light and overlay are not read from the buffer, but set on every draw.
+     */
+    public void upload(FloatBuffer positions, FloatBuffer uvs, FloatBuffer normals, int startFace, int faceCount, float texWidth, float texHeight) {
+        UPLOAD_BUILDER.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.NEW_ENTITY);
+
+        int end = (startFace + faceCount) * 4;
+        for (int i = startFace * 4; i < end; i++) {
+            UPLOAD_BUILDER.vertex(
+                    positions.get(i * 3), positions.get(i * 3 + 1), positions.get(i * 3 + 2),
+                    1f, 1f, 1f, 1f,
+                    uvs.get(i * 2) / texWidth, uvs.get(i * 2 + 1) / texHeight,
+                    0, 0,
+                    normals.get(i * 3), normals.get(i * 3 + 1), normals.get(i * 3 + 2)
+            );
+        }
+
+        vertexBuffer.bind();
+        vertexBuffer.upload(UPLOAD_BUILDER.end());
+        //the vertex array keeps those disabled, so the shader reads the constant values set by draw()
+        GlStateManager._disableVertexAttribArray(OVERLAY_ATTRIBUTE);
+        GlStateManager._disableVertexAttribArray(LIGHT_ATTRIBUTE);
+        VertexBuffer.unbind();
+
+        this.faceCount = faceCount;
+    }
+
+    /**
+     * Draws with the shader and render state already set up by the RetainedDrawBatch.
+     */
+    public void draw(int overlay, int light) {
+        vertexBuffer.bind();
+        GL30.glVertexAttribI2i(OVERLAY_ATTRIBUTE, overlay & 0xFFFF, overlay >> 16 & 0xFFFF);
+        GL30.glVertexAttribI2i(LIGHT_ATTRIBUTE, light & 0xFFFF, light >> 16 & 0xFFFF);
+        vertexBuffer.draw();
+    }
+
+    public void close() {
+        if (RenderSystem.isOnRenderThread())
+            vertexBuffer.close();
+        else
+            RenderSystem.recordRenderCall(vertexBuffer::close);
+    }
+}
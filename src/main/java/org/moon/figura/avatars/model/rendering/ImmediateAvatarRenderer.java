@@ -18,6 +18,8 @@ import org.moon.figura.avatars.model.rendering.texture.RenderTypes;
 import org.moon.figura.config.Config;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.trust.TrustContainer;
 import org.moon.figura.utils.ColorUtils;
@@ -29,16 +31,22 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class ImmediateAvatarRenderer extends AvatarRenderer {
 
     protected final List<FiguraImmediateBuffer> buffers = new ArrayList<>(0);
+    protected final List<FiguraTextureSet> textureSets = new ArrayList<>(0);
     protected final PartCustomization.Stack customizationStack = new PartCustomization.Stack();
+    protected int faceCount;
 
     protected static final PoseStack VIEW_MATRICES = new PoseStack();
     public static final FiguraMat4 VIEW_TO_WORLD_MATRIX = FiguraMat4.of();
 
+    //scratch matrices to read the vanilla pose into
+    private static final FloatMat4 POSE_MATRIX = new FloatMat4();
+    private static final FloatMat3 NORMAL_MATRIX = new FloatMat3();
+
     public ImmediateAvatarRenderer(Avatar avatar) {
         super(avatar);
 
-        //Textures
-        List<FiguraTextureSet> textureSets = new ArrayList<>();
+        //Textures, reusing the unchanged ones when hotswapping
+        ImmediateAvatarRenderer previous = avatar.getPreviousRenderer() instanceof ImmediateAvatarRenderer r ? r : null;
         ListTag texturesList = avatar.nbt.getList("textures", Tag.TAG_COMPOUND);
         for (int i = 0; i < texturesList.size(); i++) {
             CompoundTag tag = texturesList.getCompound(i);
@@ -51,7 +59,7 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
             byte[] emissiveData = tag.getByteArray("emissive");
             emissiveData = emissiveData.length == 0 ? null : emissiveData;
 
-            textureSets.add(new FiguraTextureSet(name, mainData, emissiveData));
+            textureSets.add(new FiguraTextureSet(name, mainData, emissiveData, previous == null ? null : previous.getTextureSet(name)));
         }
 
         //Vertex data, read model parts
@@ -61,6 +69,9 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         for (int i = 0; i < textureSets.size() && i < builders.size(); i++)
             buffers.add(builders.get(i).build(textureSets.get(i), customizationStack));
 
+        for (FiguraImmediateBuffer buffer : buffers)
+            faceCount += buffer.positions.capacity() / 12;
+
         avatar.hasTexture = !texturesList.isEmpty();
     }
 
@@ -72,6 +83,13 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
             buffer.clean();
     }
 
+    public FiguraTextureSet getTextureSet(String name) {
+        for (FiguraTextureSet set : textureSets)
+            if (set.name.equals(name))
+                return set;
+        return null;
+    }
+
     public void checkEmpty() {
         if (!customizationStack.isEmpty())
             throw new IllegalStateException("Customization stack not empty!");
@@ -98,13 +116,9 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         //Push transform
         customizationStack.push(customization);
 
-        //Iterate and setup each buffer
-        for (FiguraImmediateBuffer buffer : buffers) {
-            //Reset buffers
-            buffer.clearBuffers();
-            //Upload texture if necessary
+        //Upload textures if necessary
+        for (FiguraImmediateBuffer buffer : buffers)
             buffer.uploadTexIfNeeded();
-        }
 
         //Set shouldRenderPivots
         int config = Config.RENDER_DEBUG_PARTS_PIVOT.asInt();
@@ -137,20 +151,14 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         customization.setPrimaryRenderType(RenderTypes.TRANSLUCENT);
         customization.setSecondaryRenderType(RenderTypes.EMISSIVE);
 
-        double s = 1.0 / 16;
+        float s = 1f / 16;
         customization.positionMatrix.scale(s, s, s);
         customization.positionMatrix.rotateZ(180);
-        customization.positionMatrix.translate(0, vertOffset, 0);
+        customization.positionMatrix.translate(0f, (float) vertOffset, 0f);
         customization.normalMatrix.rotateZ(180);
 
-        FiguraMat4 posMat = FiguraMat4.fromMatrix4f(matrices.last().pose());
-        FiguraMat3 normalMat = FiguraMat3.fromMatrix3f(matrices.last().normal());
-
-        customization.positionMatrix.multiply(posMat);
-        customization.normalMatrix.multiply(normalMat);
-
-        posMat.free();
-        normalMat.free();
+        customization.positionMatrix.multiply(POSE_MATRIX.set(matrices.last().pose()));
+        customization.normalMatrix.multiply(NORMAL_MATRIX.set(matrices.last().normal()));
 
         customization.visible = true;
         customization.light = light;
@@ -268,7 +276,11 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         return customizePeek;
     }
 
-    public void pushFaces(int texIndex, int faceCount, int[] remainingComplexity) {
-        buffers.get(texIndex).pushVertices(this, faceCount, remainingComplexity);
+    public void pushFaces(int texIndex, int startFace, int faceCount, int[] remainingComplexity) {
+        buffers.get(texIndex).pushVertices(this, startFace, faceCount, remainingComplexity);
+    }
+
+    public void skipFaces(int texIndex, int faceCount, int[] remainingComplexity) {
+        buffers.get(texIndex).skipVertices(faceCount, remainingComplexity);
     }
 }
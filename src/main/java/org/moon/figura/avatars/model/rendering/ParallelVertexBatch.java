@@ -0,0 +1,179 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import org.moon.figura.avatars.model.PartCustomization;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Collects the segments pushed during a tree walk, instead of transforming them right away,
+ * then transforms all of them across the common ForkJoinPool, and finally copies them,
+ * in the same order they were pushed, into the buffer source on the render thread.
+ */
+public class ParallelVertexBatch {
+
+    //a task stops splitting once it has less than this many faces
+    private static final int FACES_PER_TASK = 512;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private int size = 0;
+
+    public void add(RenderType renderType, FiguraImmediateBuffer buffer, PartCustomization customization, int startFace, int faceCount, float texWidth, float texHeight) {
+        Segment segment;
+        if (size == segments.size())
+            segments.add(segment = new Segment());
+        else
+            segment = segments.get(size);
+        size++;
+
+        segment.set(renderType, buffer, customization, startFace, faceCount, texWidth, texHeight);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void flush(MultiBufferSource bufferSource) {
+        if (size == 0)
+            return;
+
+        ForkJoinPool.commonPool().invoke(new TransformTask(0, size));
+
+        for (int i = 0; i < size; i++) {
+            Segment segment = segments.get(i);
+            segment.copyTo(bufferSource.getBuffer(segment.renderType));
+            segment.clear();
+        }
+
+        size = 0;
+    }
+
+    private class TransformTask extends RecursiveAction {
+
+        private final int from, to;
+
+        private TransformTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int faces = 0;
+            for (int i = from; i < to; i++)
+                faces += segments.get(i).faceCount;
+
+            if (to - from == 1 || faces <= FACES_PER_TASK) {
+                for (int i = from; i < to; i++)
+                    segments.get(i).transform();
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new TransformTask(from, middle), new TransformTask(middle, to));
+        }
+    }
+
+    /**
+     * One part segment, with everything needed from its customization copied at push time,
+     * as the customization stack keeps changing while the walk goes on.
+     */
+    private static class Segment {
+
+        private static final int STRIDE = 8;
+
+        private RenderType renderType;
+        private FloatBuffer positions, uvs, normals;
+        private int startFace, faceCount;
+
+        private float p11, p12, p13, p14, p21, p22, p23, p24, p31, p32, p33, p34;
+        private float n11, n12, n13, n21, n22, n23, n31, n32, n33;
+        private float u11, u12, u13, u21, u22, u23;
+        private float r, g, b, a;
+        private int overlay, light;
+
+        //transformed x, y, z, u, v, nx, ny, nz
+        private float[] out = new float[0];
+
+        private void set(RenderType renderType, FiguraImmediateBuffer buffer, PartCustomization customization, int startFace, int faceCount, float texWidth, float texHeight) {
+            this.renderType = renderType;
+            this.positions = buffer.positions;
+            this.uvs = buffer.uvs;
+            this.normals = buffer.normals;
+            this.startFace = startFace;
+            this.faceCount = faceCount;
+
+            FloatMat4 pos = customization.positionMatrix;
+            p11 = pos.v11; p12 = pos.v12; p13 = pos.v13; p14 = pos.v14;
+            p21 = pos.v21; p22 = pos.v22; p23 = pos.v23; p24 = pos.v24;
+            p31 = pos.v31; p32 = pos.v32; p33 = pos.v33; p34 = pos.v34;
+
+            FloatMat3 normal = customization.normalMatrix;
+            n11 = normal.v11; n12 = normal.v12; n13 = normal.v13;
+            n21 = normal.v21; n22 = normal.v22; n23 = normal.v23;
+            n31 = normal.v31; n32 = normal.v32; n33 = normal.v33;
+
+            FloatMat3 uv = customization.uvMatrix;
+            u11 = uv.v11 / texWidth; u12 = uv.v12 / texHeight; u13 = uv.v13;
+            u21 = uv.v21 / texWidth; u22 = uv.v22 / texHeight; u23 = uv.v23;
+
+            r = (float) customization.color.x;
+            g = (float) customization.color.y;
+            b = (float) customization.color.z;
+            a = customization.alpha;
+            overlay = customization.overlay;
+            light = customization.light;
+
+            int length = faceCount * 4 * STRIDE;
+            if (out.length < length)
+                out = new float[length];
+        }
+
+        //runs on any thread, the source buffers are only read with absolute gets
+        private void transform() {
+            int startVertex = startFace * 4;
+            int vertexCount = faceCount * 4;
+            float[] o = out;
+
+            for (int i = 0; i < vertexCount; i++) {
+                int v = startVertex + i;
+                float x = positions.get(v * 3), y = positions.get(v * 3 + 1), z = positions.get(v * 3 + 2);
+                float u = uvs.get(v * 2), w = uvs.get(v * 2 + 1);
+                float nx = normals.get(v * 3), ny = normals.get(v * 3 + 1), nz = normals.get(v * 3 + 2);
+
+                int j = i * STRIDE;
+                o[j] = p11 * x + p12 * y + p13 * z + p14;
+                o[j + 1] = p21 * x + p22 * y + p23 * z + p24;
+                o[j + 2] = p31 * x + p32 * y + p33 * z + p34;
+                o[j + 3] = u11 * u + u12 * w + u13;
+                o[j + 4] = u21 * u + u22 * w + u23;
+                o[j + 5] = n11 * nx + n12 * ny + n13 * nz;
+                o[j + 6] = n21 * nx + n22 * ny + n23 * nz;
+                o[j + 7] = n31 * nx + n32 * ny + n33 * nz;
+            }
+        }
+
+        private void copyTo(VertexConsumer consumer) {
+            int vertexCount = faceCount * 4;
+            float[] o = out;
+            for (int i = 0; i < vertexCount; i++) {
+                int j = i * STRIDE;
+                consumer.vertex(o[j], o[j + 1], o[j + 2], r, g, b, a, o[j + 3], o[j + 4], overlay, light, o[j + 5], o[j + 6], o[j + 7]);
+            }
+        }
+
+        //do not keep the avatar buffers alive from a reused segment
+        private void clear() {
+            renderType = null;
+            positions = uvs = normals = null;
+        }
+    }
+}
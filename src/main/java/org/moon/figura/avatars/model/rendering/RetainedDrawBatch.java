@@ -0,0 +1,202 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.platform.Window;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.math.Matrix3f;
+import com.mojang.math.Matrix4f;
+import com.mojang.math.Vector3f;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import org.moon.figura.avatars.model.PartCustomization;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
+import org.moon.figura.mixin.render.RenderSystemAccessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the retained segments drawn during a tree walk, then draws them grouped by render type,
+ * the same grouping the buffer source does for the immediate path.
+ * The render state and the shader are set up once per group, and between two draws
+ * only the part uniforms (model view, color and lights) are uploaded again.
+ * Vertices are kept in part space, so the part matrix goes in the model view matrix,
+ * and the lights are moved into part space instead of transforming every normal.
+ */
+public class RetainedDrawBatch {
+
+    private static final FloatMat4 MODEL_VIEW = new FloatMat4();
+    private static final Matrix4f MODEL_VIEW_MATRIX = new Matrix4f();
+
+    //the entity shaders compute the fog from IViewRotMat * Position, which only works for view space positions
+    //with an identity the spherical fog is length(ModelViewMat * Position), so the right distance for our part space positions
+    private static final Matrix3f IDENTITY = new Matrix3f();
+    static {
+        IDENTITY.setIdentity();
+    }
+
+    private final List<Draw> draws = new ArrayList<>();
+    private final List<RenderType> renderTypes = new ArrayList<>();
+    private int size = 0;
+
+    public void add(RenderType renderType, FiguraVertexBuffer vertexBuffer, PartCustomization customization) {
+        Draw draw;
+        if (size == draws.size())
+            draws.add(draw = new Draw());
+        else
+            draw = draws.get(size);
+        size++;
+
+        draw.set(renderType, vertexBuffer, customization);
+        if (!renderTypes.contains(renderType))
+            renderTypes.add(renderType);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void flush(MultiBufferSource bufferSource) {
+        if (size == 0)
+            return;
+
+        Vector3f[] lights = RenderSystemAccessor.getShaderLightDirections();
+        Vector3f light0 = lights[0], light1 = lights[1];
+
+        for (RenderType renderType : renderTypes) {
+            //draw what was already batched with this render type first, to keep the draw order
+            if (bufferSource instanceof MultiBufferSource.BufferSource source)
+                source.endBatch(renderType);
+
+            renderType.setupRenderState();
+            ShaderInstance shader = RenderSystem.getShader();
+            if (shader != null) {
+                setupShader(shader);
+                for (int i = 0; i < size; i++) {
+                    Draw draw = draws.get(i);
+                    if (draw.renderType == renderType)
+                        draw.draw(shader, light0, light1);
+                }
+                shader.clear();
+            }
+            VertexBuffer.unbind();
+            renderType.clearRenderState();
+        }
+
+        for (int i = 0; i < size; i++)
+            draws.get(i).clear();
+        renderTypes.clear();
+        size = 0;
+    }
+
+    /**
+     * Same uniforms as VertexBuffer.drawWithShader, minus the ones set per draw.
+     */
+    private static void setupShader(ShaderInstance shader) {
+        for (int i = 0; i < 12; i++)
+            shader.setSampler("Sampler" + i, RenderSystem.getShaderTexture(i));
+
+        if (shader.PROJECTION_MATRIX != null)
+            shader.PROJECTION_MATRIX.set(RenderSystem.getProjectionMatrix());
+        if (shader.INVERSE_VIEW_ROTATION_MATRIX != null)
+            shader.INVERSE_VIEW_ROTATION_MATRIX.set(IDENTITY);
+        if (shader.FOG_START != null)
+            shader.FOG_START.set(RenderSystem.getShaderFogStart());
+        if (shader.FOG_END != null)
+            shader.FOG_END.set(RenderSystem.getShaderFogEnd());
+        if (shader.FOG_COLOR != null)
+            shader.FOG_COLOR.set(RenderSystem.getShaderFogColor());
+        if (shader.FOG_SHAPE != null)
+            shader.FOG_SHAPE.set(RenderSystem.getShaderFogShape().getIndex());
+        if (shader.TEXTURE_MATRIX != null)
+            shader.TEXTURE_MATRIX.set(RenderSystem.getTextureMatrix());
+        if (shader.GAME_TIME != null)
+            shader.GAME_TIME.set(RenderSystem.getShaderGameTime());
+        if (shader.SCREEN_SIZE != null) {
+            Window window = Minecraft.getInstance().getWindow();
+            shader.SCREEN_SIZE.set((float) window.getWidth(), (float) window.getHeight());
+        }
+
+        RenderSystem.setupShaderLights(shader);
+        shader.apply();
+    }
+
+    /**
+     * One retained segment, with everything needed from its customization copied at push time,
+     * as the customization stack keeps changing while the walk goes on.
+     */
+    private static class Draw {
+
+        private RenderType renderType;
+        private FiguraVertexBuffer vertexBuffer;
+
+        private final FloatMat4 pose = new FloatMat4();
+        private final FloatMat3 normal = new FloatMat3();
+        private float r, g, b, a;
+        private int overlay, light;
+
+        private void set(RenderType renderType, FiguraVertexBuffer vertexBuffer, PartCustomization customization) {
+            this.renderType = renderType;
+            this.vertexBuffer = vertexBuffer;
+
+            pose.set(customization.positionMatrix);
+            normal.set(customization.normalMatrix);
+
+            r = (float) customization.color.x;
+            g = (float) customization.color.y;
+            b = (float) customization.color.z;
+            a = customization.alpha == null ? 1f : customization.alpha;
+            overlay = customization.overlay;
+            light = customization.light;
+        }
+
+        private void draw(ShaderInstance shader, Vector3f light0, Vector3f light1) {
+            //part space -> view space
+            if (shader.MODEL_VIEW_MATRIX != null) {
+                MODEL_VIEW.set(RenderSystem.getModelViewMatrix()).rightMultiply(pose).copyTo(MODEL_VIEW_MATRIX);
+                shader.MODEL_VIEW_MATRIX.set(MODEL_VIEW_MATRIX);
+                shader.MODEL_VIEW_MATRIX.upload();
+            }
+
+            //color is not baked, so use the shader color modulator
+            if (shader.COLOR_MODULATOR != null) {
+                shader.COLOR_MODULATOR.set(r, g, b, a);
+                shader.COLOR_MODULATOR.upload();
+            }
+
+            //lights are in view space, but our normals are not
+            if (shader.LIGHT0_DIRECTION != null && light0 != null) {
+                shader.LIGHT0_DIRECTION.set(toPartSpace(light0, normal));
+                shader.LIGHT0_DIRECTION.upload();
+            }
+            if (shader.LIGHT1_DIRECTION != null && light1 != null) {
+                shader.LIGHT1_DIRECTION.set(toPartSpace(light1, normal));
+                shader.LIGHT1_DIRECTION.upload();
+            }
+
+            vertexBuffer.draw(overlay, light);
+        }
+
+        //do not keep the avatar buffers alive from a reused draw
+        private void clear() {
+            renderType = null;
+            vertexBuffer = null;
+        }
+    }
+
+    /**
+     * The shader does dot(light, normal matrix * normal), which is the same as
+     * dot(transposed normal matrix * light, normal), so we only transform the two lights.
+     */
+    private static Vector3f toPartSpace(Vector3f light, FloatMat3 normalMatrix) {
+        float x = light.x(), y = light.y(), z = light.z();
+        return new Vector3f(
+                normalMatrix.v11 * x + normalMatrix.v21 * y + normalMatrix.v31 * z,
+                normalMatrix.v12 * x + normalMatrix.v22 * y + normalMatrix.v32 * z,
+                normalMatrix.v13 * x + normalMatrix.v23 * y + normalMatrix.v33 * z
+        );
+    }
+}
@@ -0,0 +1,201 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.moon.figura.math.matrix.FloatMat4;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records the skull geometry of an avatar once per frame, in skull space,
+ * then replays it for every skull of the same owner, only moving it by the skull pose.
+ * The light is swapped per skull, unless a part has its own light.
+ */
+public class SkullRenderBatch implements MultiBufferSource {
+
+    //light used while recording, so we can tell the skull light apart from the light set by parts
+    public static final int RECORDING_LIGHT = -1;
+
+    private final Map<RenderType, Recording> recordings = new LinkedHashMap<>();
+    private final FloatMat4 pose = new FloatMat4();
+    private final FloatMat3 normal = new FloatMat3();
+    private int frame = -1;
+
+    //what the recorded render returned, and how much it cost
+    public boolean result;
+    public int complexity;
+
+    public boolean isRecorded(int frame) {
+        return this.frame == frame;
+    }
+
+    public void begin(int frame) {
+        this.frame = frame;
+        for (Recording recording : recordings.values())
+            recording.clear();
+    }
+
+    public void end(boolean result, int complexity) {
+        this.result = result;
+        this.complexity = complexity;
+    }
+
+    public void invalidate() {
+        frame = -1;
+    }
+
+    @Override
+    public VertexConsumer getBuffer(RenderType renderType) {
+        return recordings.computeIfAbsent(renderType, type -> new Recording());
+    }
+
+    public void replay(PoseStack stack, MultiBufferSource bufferSource, int light) {
+        pose.set(stack.last().pose());
+        normal.set(stack.last().normal());
+
+        for (Map.Entry<RenderType, Recording> entry : recordings.entrySet()) {
+            Recording recording = entry.getValue();
+            if (recording.size > 0)
+                recording.replay(bufferSource.getBuffer(entry.getKey()), pose, normal, light);
+        }
+    }
+
+    /**
+     * Keeps the vertices as they were pushed, 12 floats and 2 ints (overlay and light) each.
+     */
+    private static class Recording implements VertexConsumer {
+
+        private static final int STRIDE = 12;
+
+        private float[] data = new float[STRIDE * 256];
+        private int[] lights = new int[2 * 256];
+        private int size = 0;
+
+        //current vertex, for the chained calls
+        private final float[] current = new float[STRIDE];
+        private int currentOverlay, currentLight;
+        private int defaultR, defaultG, defaultB, defaultA;
+        private boolean defaultColor;
+
+        private void clear() {
+            size = 0;
+        }
+
+        @Override
+        public void vertex(float x, float y, float z, float red, float green, float blue, float alpha, float u, float v, int overlay, int light, float normalX, float normalY, float normalZ) {
+            if ((size + 1) * STRIDE > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+                lights = Arrays.copyOf(lights, lights.length * 2);
+            }
+
+            float[] d = data;
+            int i = size * STRIDE;
+            d[i] = x; d[i + 1] = y; d[i + 2] = z;
+            d[i + 3] = red; d[i + 4] = green; d[i + 5] = blue; d[i + 6] = alpha;
+            d[i + 7] = u; d[i + 8] = v;
+            d[i + 9] = normalX; d[i + 10] = normalY; d[i + 11] = normalZ;
+            lights[size * 2] = overlay;
+            lights[size * 2 + 1] = light;
+            size++;
+        }
+
+        private void replay(VertexConsumer consumer, FloatMat4 pose, FloatMat3 normal, int light) {
+            float p11 = pose.v11, p12 = pose.v12, p13 = pose.v13, p14 = pose.v14;
+            float p21 = pose.v21, p22 = pose.v22, p23 = pose.v23, p24 = pose.v24;
+            float p31 = pose.v31, p32 = pose.v32, p33 = pose.v33, p34 = pose.v34;
+            float n11 = normal.v11, n12 = normal.v12, n13 = normal.v13;
+            float n21 = normal.v21, n22 = normal.v22, n23 = normal.v23;
+            float n31 = normal.v31, n32 = normal.v32, n33 = normal.v33;
+
+            float[] d = data;
+            int[] l = lights;
+            for (int vertex = 0; vertex < size; vertex++) {
+                int i = vertex * STRIDE;
+                float x = d[i], y = d[i + 1], z = d[i + 2];
+                float nx = d[i + 9], ny = d[i + 10], nz = d[i + 11];
+
+                float tnx = n11 * nx + n12 * ny + n13 * nz;
+                float tny = n21 * nx + n22 * ny + n23 * nz;
+                float tnz = n31 * nx + n32 * ny + n33 * nz;
+                float len = (float) Math.sqrt(tnx * tnx + tny * tny + tnz * tnz);
+                if (len != 0f) {
+                    tnx /= len;
+                    tny /= len;
+                    tnz /= len;
+                }
+
+                int vertexLight = l[vertex * 2 + 1];
+                consumer.vertex(
+                        p11 * x + p12 * y + p13 * z + p14,
+                        p21 * x + p22 * y + p23 * z + p24,
+                        p31 * x + p32 * y + p33 * z + p34,
+                        d[i + 3], d[i + 4], d[i + 5], d[i + 6],
+                        d[i + 7], d[i + 8],
+                        l[vertex * 2], vertexLight == RECORDING_LIGHT ? light : vertexLight,
+                        tnx, tny, tnz
+                );
+            }
+        }
+
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            current[0] = (float) x; current[1] = (float) y; current[2] = (float) z;
+            if (defaultColor) {
+                current[3] = defaultR / 255f; current[4] = defaultG / 255f; current[5] = defaultB / 255f; current[6] = defaultA / 255f;
+            }
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            current[3] = red / 255f; current[4] = green / 255f; current[5] = blue / 255f; current[6] = alpha / 255f;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv(float u, float v) {
+            current[7] = u; current[8] = v;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlayCoords(int u, int v) {
+            currentOverlay = u & 0xFFFF | v << 16;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv2(int u, int v) {
+            currentLight = u & 0xFFFF | v << 16;
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            current[9] = x; current[10] = y; current[11] = z;
+            return this;
+        }
+
+        @Override
+        public void endVertex() {
+            float[] c = current;
+            vertex(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8], currentOverlay, currentLight, c[9], c[10], c[11]);
+        }
+
+        @Override
+        public void defaultColor(int red, int green, int blue, int alpha) {
+            defaultR = red; defaultG = green; defaultB = blue; defaultA = alpha;
+            defaultColor = true;
+        }
+
+        @Override
+        public void unsetDefaultColor() {
+            defaultColor = false;
+        }
+    }
+}
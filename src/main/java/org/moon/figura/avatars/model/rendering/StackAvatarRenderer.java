@@ -1,5 +1,7 @@
 package org.moon.figura.avatars.model.rendering;
 
+import com.mojang.blaze3d.platform.Window;
+import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.avatars.model.FiguraModelPart;
@@ -7,6 +9,7 @@ import org.moon.figura.avatars.model.PartCustomization;
 import org.moon.figura.avatars.model.rendertasks.RenderTask;
 import org.moon.figura.config.Config;
 import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.math.matrix.FloatMat4;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.trust.TrustContainer;
 
@@ -14,6 +17,16 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
 
     private static final PartCustomization pivotOffsetter = PartCustomization.of();
 
+    //last root matrices of the render passes, when one is the same, the whole cached tree is still valid
+    protected final PartCustomization.MatrixCache rootMatrixCache = new PartCustomization.MatrixCache(PartFilterScheme.values().length);
+
+    //projection * model view, to cull parts in clip space
+    private static final FloatMat4 CLIP_MATRIX = new FloatMat4();
+    private static final FloatMat4 MODEL_VIEW_MATRIX = new FloatMat4();
+    private static final FloatMat4 PART_CLIP_MATRIX = new FloatMat4();
+
+    private final ParallelVertexBatch parallelBatch = new ParallelVertexBatch();
+
     public StackAvatarRenderer(Avatar avatar) {
         super(avatar);
     }
@@ -27,14 +40,12 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
 
         //Push transform
         customizationStack.push(customization);
+        //passes sharing the same root pose (like the skull and its head pass) reuse the part matrices
+        rootMatrixCache.matchRoot(customizationStack.peek());
 
-        //Iterate and setup each buffer
-        for (FiguraImmediateBuffer buffer : buffers) {
-            //Reset buffers
-            buffer.clearBuffers();
-            //Upload texture if necessary
+        //Upload textures if necessary
+        for (FiguraImmediateBuffer buffer : buffers)
             buffer.uploadTexIfNeeded();
-        }
 
         //Set shouldRenderPivots
         int config = Config.RENDER_DEBUG_PARTS_PIVOT.asInt();
@@ -47,6 +58,16 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
         if (allowMatrixUpdate)
             VIEW_TO_WORLD_MATRIX.set(AvatarRenderer.worldToViewMatrix().invert());
 
+        //culling matrix
+        if (allowPartCulling || minPartPixels > 0) {
+            CLIP_MATRIX.set(RenderSystem.getProjectionMatrix());
+            CLIP_MATRIX.rightMultiply(MODEL_VIEW_MATRIX.set(RenderSystem.getModelViewMatrix()));
+        }
+
+        //big avatars transform their vertices in parallel
+        int parallelFaces = Config.PARALLEL_VERTEX_FACES.asInt();
+        vertexBatch = parallelFaces > 0 && faceCount >= parallelFaces ? parallelBatch : null;
+
         //Render all model parts
         int prev = avatar.trust.get(TrustContainer.Trust.COMPLEXITY) - avatar.complexity;
         int[] remainingComplexity = new int[] {prev};
@@ -54,6 +75,11 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
         if (initialValue != null)
             renderPart(root, remainingComplexity, initialValue);
 
+        if (vertexBatch != null) {
+            vertexBatch.flush(bufferSource);
+            vertexBatch = null;
+        }
+
         avatar.complexity += prev - Math.max(remainingComplexity[0], 0);
 
         customizationStack.pop();
@@ -87,13 +113,17 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
 
         custom.visible = part.getVisible() && thisPassedPredicate;
         custom.recalculate();
-        customizationStack.push(custom);
+        //the reset matrices are not the real part matrices, so they must not go into the cache
+        customizationStack.push(custom, reset ? null : part.matrixCache);
         custom.visible = storedVisibility;
 
-        if (reset) custom.needsMatrixRecalculation = true;
+        if (reset) custom.markMatrixDirty();
 
         //render this
-        part.pushVerticesImmediate(this, remainingComplexity);
+        if ((allowPartCulling || minPartPixels > 0) && isCulled(part))
+            part.skipVerticesImmediate(this, remainingComplexity);
+        else
+            part.pushVerticesImmediate(this, remainingComplexity);
 
         //render extras
         if (thisPassedPredicate) {
@@ -155,4 +185,70 @@ public class StackAvatarRenderer extends ImmediateAvatarRenderer {
         //pop
         customizationStack.pop();
     }
+
+    /**
+     * Checks the part bounds, with the current stack matrices, against the camera frustum, in clip space.
+     * The part is only outside if all the 8 corners are outside of the same plane.
+     * When there is a minimum part size, parts fully in front of the camera are also culled
+     * if their bounds cover fewer pixels than it on the screen.
+     */
+    private boolean isCulled(FiguraModelPart part) {
+        if (part.boundsMin == null)
+            return false;
+
+        FloatMat4 m = PART_CLIP_MATRIX.set(CLIP_MATRIX).rightMultiply(customizationStack.peek().positionMatrix);
+        FiguraVec3 min = part.boundsMin, max = part.boundsMax;
+        boolean checkSize = minPartPixels > 0;
+
+        //one bit per plane: -x, +x, -y, +y, -z, +z
+        int outside = 0b111111;
+        //screen rect, in normalized device coordinates
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            float x = (float) ((i & 1) == 0 ? min.x : max.x);
+            float y = (float) ((i & 2) == 0 ? min.y : max.y);
+            float z = (float) ((i & 4) == 0 ? min.z : max.z);
+
+            float cx = m.v11 * x + m.v12 * y + m.v13 * z + m.v14;
+            float cy = m.v21 * x + m.v22 * y + m.v23 * z + m.v24;
+            float cz = m.v31 * x + m.v32 * y + m.v33 * z + m.v34;
+            float cw = m.v41 * x + m.v42 * y + m.v43 * z + m.v44;
+
+            int corner = 0;
+            if (cx < -cw) corner |= 1;
+            if (cx > cw) corner |= 2;
+            if (cy < -cw) corner |= 4;
+            if (cy > cw) corner |= 8;
+            if (cz < -cw) corner |= 16;
+            if (cz > cw) corner |= 32;
+            outside &= corner;
+
+            if (checkSize) {
+                //a corner behind the camera can span the whole screen
+                if (cw <= 0f) {
+                    checkSize = false;
+                } else {
+                    float nx = cx / cw, ny = cy / cw;
+                    minX = Math.min(minX, nx);
+                    maxX = Math.max(maxX, nx);
+                    minY = Math.min(minY, ny);
+                    maxY = Math.max(maxY, ny);
+                }
+            }
+
+            if (outside == 0 && !checkSize)
+                return false;
+        }
+
+        if (allowPartCulling && outside != 0)
+            return true;
+
+        if (!checkSize)
+            return false;
+
+        //ndc goes from -1 to 1
+        Window window = Minecraft.getInstance().getWindow();
+        float pixels = Math.max((maxX - minX) * window.getWidth(), (maxY - minY) * window.getHeight()) * 0.5f;
+        return pixels < minPartPixels;
+    }
 }
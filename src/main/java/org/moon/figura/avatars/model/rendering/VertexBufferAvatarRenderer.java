@@ -0,0 +1,57 @@
+package org.moon.figura.avatars.model.rendering;
+
+import com.mojang.blaze3d.shaders.FogShape;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.phys.Vec3;
+import org.moon.figura.avatars.Avatar;
+import org.moon.figura.utils.ui.UIHelper;
+
+/**
+ * Retained mode renderer, the geometry of every part is uploaded to the GPU once,
+ * and each frame only the part matrices, colors and lights are sent along.
+ * The tree walk is the same as the StackAvatarRenderer, only the vertex pushing differs.
+ * Special parts (world, hud, skull...) and translucent/glowing entities still use the immediate buffers.
+ */
+public class VertexBufferAvatarRenderer extends StackAvatarRenderer {
+
+    //how far the parts may reach from the entity, when checking if the avatar can be in the fog
+    private static final double FOG_MARGIN = 16d;
+
+    private final RetainedDrawBatch drawBatch = new RetainedDrawBatch();
+    private boolean retained = false;
+
+    public VertexBufferAvatarRenderer(Avatar avatar) {
+        super(avatar);
+    }
+
+    @Override
+    public void render() {
+        //those render types are swapped at push time, and the paperdoll is drawn batched, so keep them immediate
+        retained = !translucent && !glowing && !UIHelper.paperdoll && !mayBeInCylinderFog();
+        try {
+            super.render();
+            drawBatch.flush(bufferSource);
+        } finally {
+            retained = false;
+        }
+    }
+
+    @Override
+    public void pushFaces(int texIndex, int startFace, int faceCount, int[] remainingComplexity) {
+        if (retained)
+            buffers.get(texIndex).pushVerticesRetained(this, drawBatch, startFace, faceCount, remainingComplexity);
+        else
+            super.pushFaces(texIndex, startFace, faceCount, remainingComplexity);
+    }
+
+    //the retained shader inputs only give the right spherical fog distance (see RetainedDrawBatch)
+    //closer than the fog start there is no fog at all, so only avatars which may reach it need the immediate path
+    private boolean mayBeInCylinderFog() {
+        if (RenderSystem.getShaderFogShape() != FogShape.CYLINDER || entity == null)
+            return false;
+
+        Vec3 camera = Minecraft.getInstance().gameRenderer.getMainCamera().getPosition();
+        return camera.distanceTo(entity.getPosition(tickDelta)) + FOG_MARGIN > RenderSystem.getShaderFogStart();
+    }
+}
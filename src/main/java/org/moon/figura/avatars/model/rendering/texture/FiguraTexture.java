@@ -14,6 +14,7 @@ import org.moon.figura.utils.FiguraIdentifier;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.UUID;
 
 public class FiguraTexture extends AbstractTexture implements Closeable {
@@ -29,9 +30,16 @@ public class FiguraTexture extends AbstractTexture implements Closeable {
      */
     private NativeImage nativeImage;
 
+    /**
+     * The png this texture was read from, already kept by the avatar nbt.
+     */
+    private final byte[] data;
+
     private boolean isClosed = false;
 
     public FiguraTexture(byte[] data) {
+        this.data = data;
+
         //Read image from wrapper
         try {
             ByteBuffer wrapper = BufferUtils.createByteBuffer(data.length);
@@ -61,6 +69,10 @@ public class FiguraTexture extends AbstractTexture implements Closeable {
         uploaded = true;
     }
 
+    public boolean hasData(byte[] data) {
+        return Arrays.equals(this.data, data);
+    }
+
     public int getWidth() {
         return nativeImage.getWidth();
     }
@@ -13,12 +13,32 @@ import java.util.UUID;
 public class FiguraTextureSet {
 
     public final String name;
-    public final FiguraTexture mainTex, emissiveTex;
+    public FiguraTexture mainTex, emissiveTex;
 
     public FiguraTextureSet(String name, byte[] mainData, byte[] emissiveData) {
+        this(name, mainData, emissiveData, null);
+    }
+
+    /**
+     * Takes the textures of the previous set (from the avatar being hotswapped) when their image did not change,
+     * so they are not read and uploaded again, and are no longer closed by the previous set.
+     */
+    public FiguraTextureSet(String name, byte[] mainData, byte[] emissiveData, FiguraTextureSet previous) {
         this.name = name;
-        mainTex = mainData == null ? null : new FiguraTexture(mainData);
-        emissiveTex = emissiveData == null ? null : new FiguraTexture(emissiveData);
+
+        if (previous != null && mainData != null && previous.mainTex != null && previous.mainTex.hasData(mainData)) {
+            mainTex = previous.mainTex;
+            previous.mainTex = null;
+        } else {
+            mainTex = mainData == null ? null : new FiguraTexture(mainData);
+        }
+
+        if (previous != null && emissiveData != null && previous.emissiveTex != null && previous.emissiveTex.hasData(emissiveData)) {
+            emissiveTex = previous.emissiveTex;
+            previous.emissiveTex = null;
+        } else {
+            emissiveTex = emissiveData == null ? null : new FiguraTexture(emissiveData);
+        }
     }
 
     public void clean() {
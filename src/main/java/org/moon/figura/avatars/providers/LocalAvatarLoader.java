@@ -13,10 +13,8 @@ import org.moon.figura.utils.FiguraIdentifier;
 import org.moon.figura.utils.FiguraResourceListener;
 import org.moon.figura.utils.IOUtils;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -33,6 +31,11 @@ public class LocalAvatarLoader {
     private static final HashMap<Path, WatchKey> KEYS = new HashMap<>();
     private static Path lastLoadedPath;
 
+    //files parsed by the last load, reused by the next one (hotswap) when they were not modified
+    private static final HashMap<Path, CachedFile> FILE_CACHE = new HashMap<>();
+    private static final HashSet<Path> USED_FILES = new HashSet<>();
+    private static int parsedFiles;
+
     public static CompoundTag cheese;
     public static final ArrayList<CompoundTag> SERVER_AVATARS = new ArrayList<>();
     private static final BiFunction<String, ResourceManager, CompoundTag> LOAD_AVATAR = (name, manager) -> {
@@ -67,10 +70,14 @@ public class LocalAvatarLoader {
      * @return the NbtCompound from this path
      */
     public static CompoundTag loadAvatar(Path path) throws IOException {
+        Path previousPath = lastLoadedPath;
         resetWatchKeys();
         lastLoadedPath = path;
         addWatchKey(path);
 
+        if (path == null || !path.equals(previousPath))
+            FILE_CACHE.clear();
+
         if (path == null)
             return null;
 
@@ -81,6 +88,10 @@ public class LocalAvatarLoader {
         }
 
         //load as folder
+        long time = System.nanoTime();
+        USED_FILES.clear();
+        parsedFiles = 0;
+
         CompoundTag nbt = new CompoundTag();
 
         //Load metadata first!
@@ -95,9 +106,8 @@ public class LocalAvatarLoader {
 
         ListTag textures = new ListTag();
         ListTag animations = new ListTag();
-        BlockbenchModelParser parser = new BlockbenchModelParser();
 
-        CompoundTag models = loadModels(path, parser, textures, animations);
+        CompoundTag models = loadModels(path, textures, animations);
         models.putString("name", "models");
 
         AvatarMetadataParser.injectToModels(metadata, models);
@@ -110,6 +120,10 @@ public class LocalAvatarLoader {
         if (!animations.isEmpty())
             nbt.put("animations", animations);
 
+        //forget deleted files
+        FILE_CACHE.keySet().retainAll(USED_FILES);
+        FiguraMod.LOGGER.debug("Loaded local avatar in {}ms, parsed {} of {} files", (System.nanoTime() - time) / 1_000_000, parsedFiles, USED_FILES.size());
+
         return nbt;
     }
 
@@ -122,7 +136,8 @@ public class LocalAvatarLoader {
                 String pathStr = script.toPath().toString();
                 String name = pathStr.replaceFirst(pathRegex, "");
                 name = name.replace(File.separatorChar, '/');
-                scriptsNbt.put(name.substring(0, name.length() - 4), LuaScriptParser.parse(IOUtils.readFile(script)));
+                ListTag parsed = getOrParse(script, file -> LuaScriptParser.parse(IOUtils.readFile(file)));
+                scriptsNbt.put(name.substring(0, name.length() - 4), parsed.copy());
             }
 
             nbt.put("scripts", scriptsNbt);
@@ -135,27 +150,64 @@ public class LocalAvatarLoader {
             CompoundTag soundsNbt = new CompoundTag();
             for (File sound : sounds) {
                 String name = sound.getName();
-                soundsNbt.putByteArray(name.substring(0, name.length() - 4), IOUtils.readFileBytes(sound));
+                //the array is never modified, so it is shared with the cache
+                soundsNbt.putByteArray(name.substring(0, name.length() - 4), getOrParse(sound, IOUtils::readFileBytes));
             }
             nbt.put("sounds", soundsNbt);
         }
     }
 
-    private static CompoundTag loadModels(Path path, BlockbenchModelParser parser, ListTag textures, ListTag animations) throws IOException {
+    private static CompoundTag loadModels(Path path, ListTag textures, ListTag animations) throws IOException {
+        //walk the folders first, leaving an empty compound where each model goes
+        List<File> files = new ArrayList<>();
+        List<CompoundTag> slots = new ArrayList<>();
+        CompoundTag result = loadModelFolder(path, files, slots);
+
+        //each model is parsed on its own, in parallel, with its ids starting at 0
+        //streamed from the file, as models with many textures can be huge
+        List<BlockbenchModelParser.ModelData> models = getOrParseAll(files, file -> {
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                return new BlockbenchModelParser().parseModel(reader, file.getName().substring(0, file.getName().length() - 8));
+            }
+        });
+
+        //then the ids are offset in the folder order, so they are the same as parsing the models one after another
+        int textureOffset = 0, animationOffset = 0;
+        for (int i = 0; i < models.size(); i++) {
+            BlockbenchModelParser.ModelData data = models.get(i);
+
+            //copied, as the cached model must be left as parsed
+            CompoundTag model = slots.get(i);
+            model.merge(data.modelNbt());
+            BlockbenchModelParser.applyOffsets(model, textureOffset, animationOffset);
+
+            for (CompoundTag texture : data.textureList())
+                textures.add(texture.copy());
+            for (CompoundTag animation : data.animationList())
+                animations.add(animation.copy());
+
+            textureOffset += data.textureList().size();
+            animationOffset += data.animationList().size();
+        }
+
+        return result;
+    }
+
+    private static CompoundTag loadModelFolder(Path path, List<File> files, List<CompoundTag> slots) {
         CompoundTag result = new CompoundTag();
         File[] subFiles = path.toFile().listFiles(f -> !f.isHidden() && !f.getName().startsWith("."));
         ListTag children = new ListTag();
         if (subFiles != null)
             for (File file : subFiles) {
                 if (file.isDirectory()) {
-                    CompoundTag subfolder = loadModels(file.toPath(), parser, textures, animations);
+                    CompoundTag subfolder = loadModelFolder(file.toPath(), files, slots);
                     subfolder.putString("name", file.getName());
                     children.add(subfolder);
                 } else if (file.toString().toLowerCase().endsWith(".bbmodel")) {
-                    BlockbenchModelParser.ModelData data = parser.parseModel(IOUtils.readFile(file), file.getName().substring(0, file.getName().length() - 8));
-                    children.add(data.modelNbt());
-                    textures.addAll(data.textureList());
-                    animations.addAll(data.animationList());
+                    CompoundTag slot = new CompoundTag();
+                    files.add(file);
+                    slots.add(slot);
+                    children.add(slot);
                 }
             }
 
@@ -165,6 +217,77 @@ public class LocalAvatarLoader {
         return result;
     }
 
+    /**
+     * Returns the cached result for this file, or parses it again when it was modified since
+     */
+    private static <T> T getOrParse(File file, FileParser<T> parser) throws IOException {
+        return getOrParseAll(List.of(file), parser).get(0);
+    }
+
+    /**
+     * Same as getOrParse, but the modified files are parsed in parallel
+     * @return the results in the same order as the files
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> getOrParseAll(List<File> files, FileParser<T> parser) throws IOException {
+        List<T> result = new ArrayList<>(files.size());
+        List<Integer> missing = new ArrayList<>();
+        long[] modified = new long[files.size()];
+        long[] size = new long[files.size()];
+
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            Path path = file.toPath();
+            modified[i] = file.lastModified();
+            size[i] = file.length();
+            USED_FILES.add(path);
+
+            CachedFile cached = FILE_CACHE.get(path);
+            if (cached != null && cached.modified == modified[i] && cached.size == size[i]) {
+                result.add((T) cached.value);
+            } else {
+                result.add(null);
+                missing.add(i);
+            }
+        }
+
+        if (missing.isEmpty())
+            return result;
+
+        List<T> parsed;
+        if (missing.size() == 1) {
+            parsed = List.of(parser.parse(files.get(missing.get(0))));
+        } else {
+            try {
+                parsed = missing.parallelStream().map(i -> {
+                    try {
+                        return parser.parse(files.get(i));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).toList();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        for (int j = 0; j < missing.size(); j++) {
+            int i = missing.get(j);
+            T value = parsed.get(j);
+            result.set(i, value);
+            FILE_CACHE.put(files.get(i).toPath(), new CachedFile(modified[i], size[i], value));
+        }
+        parsedFiles += missing.size();
+
+        return result;
+    }
+
+    private interface FileParser<T> {
+        T parse(File file) throws IOException;
+    }
+
+    private record CachedFile(long modified, long size, Object value) {}
+
     /**
      * Saves the loaded NBT into a folder inside the avatar list
      */
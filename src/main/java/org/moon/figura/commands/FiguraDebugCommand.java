@@ -0,0 +1,67 @@
+package org.moon.figura.commands;
+
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import org.moon.figura.utils.FiguraText;
+import org.moon.figura.utils.caching.CacheTracker;
+import org.moon.figura.utils.caching.CacheUtils;
+
+import java.util.List;
+import java.util.Map;
+
+public class FiguraDebugCommand {
+
+    private static final int MAX_CALL_SITES = 10;
+
+    public static LiteralArgumentBuilder<FabricClientCommandSource> getCommand() {
+        LiteralArgumentBuilder<FabricClientCommandSource> debug = LiteralArgumentBuilder.literal("debug");
+
+        //cache counts
+        LiteralArgumentBuilder<FabricClientCommandSource> caches = LiteralArgumentBuilder.literal("caches");
+        caches.executes(FiguraDebugCommand::printCaches);
+
+        //toggle the leak tracking
+        LiteralArgumentBuilder<FabricClientCommandSource> track = LiteralArgumentBuilder.literal("track");
+        track.executes(context -> {
+            boolean enabled = !CacheTracker.isEnabled();
+            CacheTracker.setEnabled(enabled);
+            context.getSource().sendFeedback(FiguraText.of("command.debug.caches.track." + (enabled ? "on" : "off")));
+            return 1;
+        });
+
+        caches.then(track);
+        return debug.then(caches);
+    }
+
+    private static int printCaches(CommandContext<FabricClientCommandSource> context) {
+        FabricClientCommandSource source = context.getSource();
+
+        //per type
+        source.sendFeedback(FiguraText.of("command.debug.caches.header").withStyle(ChatFormatting.UNDERLINE));
+        for (CacheUtils.Cache<?> cache : CacheUtils.getCaches()) {
+            source.sendFeedback(Component.literal(cache.getName() + ": ").withStyle(ChatFormatting.AQUA)
+                    .append(FiguraText.of("command.debug.caches.entry",
+                            cache.getLive(), cache.getPooled(), cache.getAllocated(),
+                            cache.getHits(), cache.getOverflows()).withStyle(ChatFormatting.WHITE)));
+        }
+
+        if (!CacheTracker.isEnabled())
+            return 1;
+
+        //per call site
+        source.sendFeedback(FiguraText.of("command.debug.caches.errors", CacheTracker.getDoubleFrees(), CacheTracker.getUseAfterFrees()));
+
+        List<Map.Entry<String, Integer>> outstanding = CacheTracker.getOutstanding();
+        source.sendFeedback(FiguraText.of("command.debug.caches.outstanding").withStyle(ChatFormatting.UNDERLINE));
+        for (int i = 0; i < outstanding.size() && i < MAX_CALL_SITES; i++) {
+            Map.Entry<String, Integer> entry = outstanding.get(i);
+            source.sendFeedback(Component.literal(entry.getValue() + "x ").withStyle(ChatFormatting.YELLOW)
+                    .append(Component.literal(entry.getKey()).withStyle(ChatFormatting.WHITE)));
+        }
+
+        return 1;
+    }
+}
@@ -11,6 +11,7 @@ import net.minecraft.network.chat.Component;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.backend.NetworkManager;
 import org.moon.figura.lua.FiguraLuaPrinter;
+import org.moon.figura.lua.LuaChunkCache;
 import org.moon.figura.utils.ColorUtils;
 import org.moon.figura.utils.FiguraText;
 
@@ -88,6 +89,13 @@ public enum Config {
     PAPERDOLL_PITCH(0f, InputType.FLOAT),
     PAPERDOLL_YAW(20f, InputType.FLOAT),
 
+    Performance,
+    LOD_REDUCED_SIZE(0, InputType.POSITIVE_INT),
+    LOD_VANILLA_SIZE(0, InputType.POSITIVE_INT),
+    PARALLEL_VERTEX_FACES(0, InputType.POSITIVE_INT),
+    SCRIPT_INIT_DISTANCE(0, InputType.POSITIVE_INT),
+    SCRIPT_EVICT_TIME(0, InputType.POSITIVE_INT),
+
     Misc,
     POPUP_BUTTON("key.keyboard.r"),
     RELOAD_BUTTON("key.keyboard.unknown"),
@@ -102,6 +110,16 @@ public enum Config {
                 FiguraText.of(tooltip + ".cubes").setStyle(ColorUtils.Colors.FRAN_PINK.style),
                 FiguraText.of(tooltip + ".groups").setStyle(ColorUtils.Colors.MAYA_BLUE.style));
     }},
+    AVATAR_RENDERER(0, 2),
+    BATCH_SKULLS(false),
+    CACHE_SCRIPTS(true) {
+        @Override
+        public void onChange() {
+            super.onChange();
+            LuaChunkCache.clear();
+        }
+    },
+    PARALLEL_SCRIPTS(false),
     LOG_OTHERS(false),
     LOG_PINGS(0, 3),
     SYNC_PINGS(false) {{
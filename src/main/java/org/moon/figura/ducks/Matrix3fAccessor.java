@@ -0,0 +1,8 @@
+package org.moon.figura.ducks;
+
+import org.moon.figura.math.matrix.FloatMat3;
+
+public interface Matrix3fAccessor {
+    void figura$set(FloatMat3 matrix);
+    void figura$copyTo(FloatMat3 matrix);
+}
@@ -0,0 +1,8 @@
+package org.moon.figura.ducks;
+
+import org.moon.figura.math.matrix.FloatMat4;
+
+public interface Matrix4fAccessor {
+    void figura$set(FloatMat4 matrix);
+    void figura$copyTo(FloatMat4 matrix);
+}
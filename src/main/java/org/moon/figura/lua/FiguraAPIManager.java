@@ -27,6 +27,8 @@ import org.moon.figura.lua.api.ping.PingAPI;
 import org.moon.figura.lua.api.ping.PingFunction;
 import org.moon.figura.lua.api.sound.LuaSound;
 import org.moon.figura.lua.api.sound.SoundAPI;
+import org.moon.figura.lua.api.threads.ScriptThread;
+import org.moon.figura.lua.api.threads.ThreadsAPI;
 import org.moon.figura.lua.api.vanilla_model.VanillaGroupPart;
 import org.moon.figura.lua.api.vanilla_model.VanillaModelAPI;
 import org.moon.figura.lua.api.vanilla_model.VanillaModelPart;
@@ -123,6 +125,9 @@ public class FiguraAPIManager {
         add(ClientAPI.class);
 
         add(AvatarAPI.class);
+
+        add(ThreadsAPI.class);
+        add(ScriptThread.class);
     }};
 
     public static final Map<String, Function<FiguraLuaRuntime, Object>> API_GETTERS = new LinkedHashMap<>() {{
@@ -142,6 +147,7 @@ public class FiguraAPIManager {
         put("matrices", r -> MatricesAPI.INSTANCE);
         put("world", r -> WorldAPI.INSTANCE);
         put("pings", r -> r.ping = new PingAPI(r.owner));
+        put("threads", r -> r.threads = new ThreadsAPI(r));
     }};
 
     static {
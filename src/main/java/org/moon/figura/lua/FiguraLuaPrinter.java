@@ -331,7 +331,8 @@ public class FiguraLuaPrinter {
      * @param message to send
      * @throws org.luaj.vm2.LuaError if the message could not fit in the queue
      */
-    private static void sendLuaChatMessage(MutableComponent message) throws LuaError {
+    //synchronized, as the scripts may be running in parallel
+    private static synchronized void sendLuaChatMessage(MutableComponent message) throws LuaError {
         if (message.getSiblings().isEmpty()) {
             charsQueued += message.getString().length();
             if (charsQueued > MAX_CHARS_QUEUED) {
@@ -351,7 +352,7 @@ public class FiguraLuaPrinter {
         }
     }
 
-    public static void printChatFromQueue() {
+    public static synchronized void printChatFromQueue() {
         int i = MAX_CHARS_PER_TICK;
         int totalLen = 0;
         MutableComponent bigComponent = chatQueue.poll();
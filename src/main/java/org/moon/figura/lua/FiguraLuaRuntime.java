@@ -19,10 +19,14 @@ import org.moon.figura.lua.api.event.EventsAPI;
 import org.moon.figura.lua.api.keybind.KeybindAPI;
 import org.moon.figura.lua.api.nameplate.NameplateAPI;
 import org.moon.figura.lua.api.ping.PingAPI;
+import org.moon.figura.lua.api.threads.ThreadsAPI;
 import org.moon.figura.lua.api.vanilla_model.VanillaModelAPI;
+import org.moon.figura.trust.TrustContainer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +49,7 @@ public class FiguraLuaRuntime {
     public RendererAPI renderer;
     public ActionWheelAPI action_wheel;
     public AvatarAPI avatar_meta;
+    public ThreadsAPI threads;
 
     public PingAPI ping;
 
@@ -56,6 +61,14 @@ public class FiguraLuaRuntime {
     private final LuaTable requireResults = new LuaTable();
     public final LuaTypeManager typeManager = new LuaTypeManager();
 
+    //time limit of the current event, only checked on the java calls, as the lua code itself is limited by the instructions
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREAD_BEAN.isCurrentThreadCpuTimeSupported();
+    private static final int CALLS_PER_TIME_CHECK = 32;
+    private long eventStart, timeLimit = -1;
+    private int callsUntilTimeCheck;
+    private int instructionLimit;
+
     public FiguraLuaRuntime(Avatar avatar) {
         owner = avatar;
         //Each user gets their own set of globals as well.
@@ -67,6 +80,7 @@ public class FiguraLuaRuntime {
         userGlobals.load(new JseMathLib());
 
         LuaC.install(userGlobals);
+        typeManager.setCallListener(this::onJavaCall);
 
         userGlobals.load(new DebugLib());
         setHookFunction = userGlobals.get("debug").get("sethook");
@@ -195,7 +209,7 @@ public class FiguraLuaRuntime {
     //In the case of an error, this will return null.
     //If there is no error, it returns the LuaValue that the script does.
     public LuaValue runScript(String script, String name) {
-        LuaValue chunk = userGlobals.load(script, name);
+        LuaValue chunk = LuaChunkCache.load(userGlobals, script, name);
         try {
             return chunk.call();
         } catch (LuaError e) {
@@ -263,8 +277,112 @@ public class FiguraLuaRuntime {
     };
 
     public void setInstructionLimit(int limit) {
+        instructionLimit = Math.max(limit, 1);
         userGlobals.running.state.bytecodes = 0;
-        setHookFunction.invoke(LuaValue.varargsOf(onReachedLimit, LuaValue.EMPTYSTRING, LuaValue.valueOf(Math.max(limit, 1))));
+        setHookFunction.invoke(LuaValue.varargsOf(onReachedLimit, LuaValue.EMPTYSTRING, LuaValue.valueOf(instructionLimit)));
+    }
+
+    // -- threads -- //
+
+    //pauses the thread which ran out of instructions for this tick
+    private final ZeroArgFunction onThreadReachedLimit = new ZeroArgFunction() {
+        @Override
+        public LuaValue call() {
+            userGlobals.yield(LuaValue.NONE);
+            return LuaValue.NIL;
+        }
+    };
+
+    public LuaThread newThread(LuaFunction func) {
+        return new LuaThread(userGlobals, func);
+    }
+
+    public void setThreadInstructionLimit(LuaThread thread, int limit) {
+        thread.state.bytecodes = 0;
+        setHookFunction.invoke(LuaValue.varargsOf(new LuaValue[] {thread, onThreadReachedLimit, LuaValue.EMPTYSTRING, LuaValue.valueOf(Math.max(limit, 1))}));
+    }
+
+    //yields the running thread, errors if not called from one
+    public void yieldThread() {
+        userGlobals.yield(LuaValue.NONE);
+    }
+
+    /**
+     * Starts the time of a new event
+     * @param micros max cpu time of the event, in microseconds, or -1 for no limit
+     */
+    public void setTimeLimit(int micros) {
+        timeLimit = micros < 0 ? -1 : micros * 1000L;
+        callsUntilTimeCheck = CALLS_PER_TIME_CHECK;
+        eventStart = getTime();
+    }
+
+    /**
+     * @return the time limit of the running event, in nanoseconds, or -1 for no limit
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @return when the running event started, in nanoseconds
+     */
+    public long getEventStart() {
+        return eventStart;
+    }
+
+    /**
+     * Gives back the time limit of an event, after an event nested in it is done
+     * @param limit the getTimeLimit() from before the nested event
+     * @param start the getEventStart() from before the nested event
+     */
+    public void restoreTimeLimit(long limit, long start) {
+        timeLimit = limit;
+        eventStart = start;
+    }
+
+    /**
+     * @return the cpu time, in microseconds, since the last event started
+     */
+    public long getEventTime() {
+        return (getTime() - eventStart) / 1000L;
+    }
+
+    private void onJavaCall(int weight) {
+        if (weight > 0) {
+            //charge the expensive calls as extra instructions
+            int cost = owner.trust.get(TrustContainer.Trust.API_COST);
+            if (cost > 0) {
+                LuaThread running = userGlobals.running;
+
+                //infinite cost, the call uses up all the instructions left
+                if (TrustContainer.Trust.API_COST.checkInfinity(cost)) {
+                    if (running.isMainThread())
+                        onReachedLimit.call();
+                    else
+                        onThreadReachedLimit.call();
+                } else {
+                    int before = running.state.bytecodes;
+                    //saturated, as the count is already close to the max value when the instructions are infinite
+                    running.state.bytecodes = (int) Math.min((long) before + (long) cost * weight, Integer.MAX_VALUE);
+                    //the hook only runs on exactly the limit, so check if we jumped over it
+                    //script threads are only paused by their hook, so they may just go a bit over their slice
+                    if (running.isMainThread() && before < instructionLimit && running.state.bytecodes >= instructionLimit)
+                        onReachedLimit.call();
+                }
+            }
+        } else if (--callsUntilTimeCheck > 0) {
+            return;
+        }
+
+        callsUntilTimeCheck = CALLS_PER_TIME_CHECK;
+        if (timeLimit >= 0 && getTime() - eventStart > timeLimit)
+            throw new LuaError("Script overran its time limit!");
+    }
+
+    //thread cpu time when supported, so the time the thread was not running is not counted
+    private static long getTime() {
+        return CPU_TIME ? THREAD_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
     }
 
     public int getInstructions() {
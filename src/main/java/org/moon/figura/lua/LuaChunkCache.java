@@ -0,0 +1,213 @@
+package org.moon.figura.lua;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.DumpState;
+import org.moon.figura.FiguraMod;
+import org.moon.figura.config.Config;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiled lua chunks, keyed by the hash of their name and source.
+ * Prototypes are never modified once compiled, so the same one is shared by every runtime
+ * (everyone wearing the same avatar, reloads, and the sandbox and math scripts of every avatar).
+ * Also kept on disk, in the cache folder, so only the first ever load pays for the compilation.
+ * The disk cache is bounded, the least recently used files, and the ones unused for too long, are deleted.
+ */
+public class LuaChunkCache {
+
+    private static final int MAX_SIZE = 256;
+    private static final int MAX_DISK_FILES = 1024;
+    private static final long MAX_DISK_AGE = TimeUnit.DAYS.toMillis(14);
+    //the folder is only checked once in a while, it may go a bit over the limit in between
+    private static final int WRITES_PER_PRUNE = 64;
+
+    private static final AtomicInteger WRITES = new AtomicInteger(WRITES_PER_PRUNE);
+
+    //access ordered, so the least recently used chunk is removed first
+    private static final Map<String, Prototype> PROTOTYPES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Prototype> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Same as globals.load(script, name), but reusing the compiled prototype when possible.
+     */
+    public static LuaFunction load(Globals globals, String script, String name) {
+        Prototype prototype = Config.CACHE_SCRIPTS.asBool() ? getPrototype(globals, script, name) : compile(globals, script, name);
+        try {
+            return globals.loader.load(prototype, name, globals);
+        } catch (IOException e) {
+            throw new LuaError("load " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Clears the memory and the disk cache.
+     */
+    public static void clear() {
+        synchronized (PROTOTYPES) {
+            PROTOTYPES.clear();
+        }
+
+        Path directory = FiguraMod.getCacheDirectory().resolve("scripts");
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(LuaChunkCache::delete);
+        } catch (NoSuchFileException ignored) {
+        } catch (Exception e) {
+            FiguraMod.LOGGER.error("Failed to clear scripts cache", e);
+        }
+    }
+
+    private static Prototype getPrototype(Globals globals, String script, String name) {
+        String key = hash(script, name);
+
+        Prototype prototype;
+        synchronized (PROTOTYPES) {
+            prototype = PROTOTYPES.get(key);
+        }
+        if (prototype != null)
+            return prototype;
+
+        Path file = getDirectory().resolve(key + ".luac");
+        prototype = read(file, name);
+        if (prototype == null) {
+            prototype = compile(globals, script, name);
+            write(file, prototype);
+        }
+
+        synchronized (PROTOTYPES) {
+            PROTOTYPES.put(key, prototype);
+        }
+        return prototype;
+    }
+
+    private static Prototype compile(Globals globals, String script, String name) {
+        try {
+            return globals.compilePrototype(new StringReader(script), name);
+        } catch (IOException e) {
+            throw new LuaError("load " + name + ": " + e);
+        }
+    }
+
+    private static Prototype read(Path file, String name) {
+        if (!Files.exists(file))
+            return null;
+
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+            Prototype prototype = LoadState.undump(stream, name);
+            touch(file);
+            return prototype;
+        } catch (Exception e) {
+            //outdated or broken file, compile it again
+            FiguraMod.LOGGER.debug("Failed to read cached script " + file, e);
+            return null;
+        }
+    }
+
+    //written to a temporary file first, so a half written chunk is never read
+    private static void write(Path file, Prototype prototype) {
+        Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                //keep the debug info, for the error line numbers
+                DumpState.dump(prototype, stream, false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            FiguraMod.LOGGER.debug("Failed to cache script " + file, e);
+            delete(temp);
+        }
+
+        if (WRITES.incrementAndGet() >= WRITES_PER_PRUNE) {
+            WRITES.set(0);
+            prune(file.getParent());
+        }
+    }
+
+    //deletes the files unused for too long, then the least recently used ones over the limit
+    private static synchronized void prune(Path directory) {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.toString().endsWith(".luac")).collect(Collectors.toList());
+        } catch (Exception e) {
+            FiguraMod.LOGGER.debug("Failed to list cached scripts", e);
+            return;
+        }
+
+        Map<Path, Long> lastUse = new HashMap<>();
+        for (Path path : files) {
+            try {
+                lastUse.put(path, Files.getLastModifiedTime(path).toMillis());
+            } catch (IOException e) {
+                lastUse.put(path, 0L);
+            }
+        }
+
+        //most recently used first
+        files.sort(Comparator.comparingLong((Path path) -> lastUse.get(path)).reversed());
+        long oldest = System.currentTimeMillis() - MAX_DISK_AGE;
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            if (i >= MAX_DISK_FILES || lastUse.get(path) < oldest)
+                delete(path);
+        }
+    }
+
+    //the modified time is used as the last use time, for pruning
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {}
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            FiguraMod.LOGGER.debug("Failed to delete cached script " + path, e);
+        }
+    }
+
+    private static Path getDirectory() {
+        Path p = FiguraMod.getCacheDirectory().resolve("scripts");
+        try {
+            Files.createDirectories(p);
+        } catch (Exception e) {
+            FiguraMod.LOGGER.error("Failed to create scripts cache directory", e);
+        }
+        return p;
+    }
+
+    //the name is part of the key, as it ends up in the error messages
+    private static String hash(String script, String name) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.moon.figura.lua;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Whitelisted methods which cost much more than a lua instruction (world queries, raycasts, nbt conversion),
+ * charged as extra instructions, the API_COST trust times the weight, and always checked against the event time limit.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface LuaExpensive {
+
+    /**
+     * How many times the API_COST this method is charged.
+     */
+    int value() default 1;
+}
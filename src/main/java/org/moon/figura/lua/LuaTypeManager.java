@@ -7,20 +7,40 @@ import org.luaj.vm2.lib.VarArgFunction;
 import org.moon.figura.lua.docs.FiguraDocsManager;
 import org.moon.figura.lua.docs.LuaTypeDoc;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * One LuaTypeManager per LuaRuntime, so that people can be allowed to edit the metatables within.
+ * The reflection behind the metatables is only done once per class, and shared by every runtime,
+ * each runtime only builds its own tables and wrapper functions out of it.
  */
 public class LuaTypeManager {
 
+    private static final Map<Class<?>, ClassTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
     private final Map<Class<?>, LuaTable> metatables = new HashMap<>();
+    private CallListener callListener;
+
+    /**
+     * Called after every java method called from lua, used by the runtime for the time limits.
+     */
+    @FunctionalInterface
+    public interface CallListener {
+        /**
+         * @param weight the LuaExpensive weight of the method, 0 for the regular ones
+         */
+        void onCall(int weight);
+    }
+
+    public void setCallListener(CallListener callListener) {
+        this.callListener = callListener;
+    }
 
     public void generateMetatableFor(Class<?> clazz) {
         if (metatables.containsKey(clazz))
@@ -33,39 +53,30 @@ public class LuaTypeManager {
             generateMetatableFor(clazz.getSuperclass());
         } catch (IllegalArgumentException ignored) {}
 
+        ClassTemplate template = TEMPLATES.computeIfAbsent(clazz, ClassTemplate::new);
+
         LuaTable metatable = new LuaTable();
 
         LuaTable indexTable = new LuaTable();
-        Class<?> currentClass = clazz;
-        while (currentClass.isAnnotationPresent(LuaWhitelist.class)) {
-            for (Method method : currentClass.getDeclaredMethods()) {
-                if (!method.isAnnotationPresent(LuaWhitelist.class)) {
-                    continue;
-                }
-                String name = method.getName();
-                if (name.startsWith("__")) { //metamethods
-                    if (metatable.rawget(name) == LuaValue.NIL) { //Only add the most recently declared metamethod, in the most specific subclass.
-                        if (name.equals("__index")) {
-                            //Custom __index implementation. First checks the regular __index table, and if it gets NIL, then calls the custom-defined __index function.
-                            metatable.set("__index", new TwoArgFunction() {
-                                final LuaFunction wrappedIndexer = getWrapper(method);
-                                @Override
-                                public LuaValue call(LuaValue arg1, LuaValue arg2) {
-                                    LuaValue result = indexTable.get(arg2);
-                                    if (result == LuaValue.NIL)
-                                        result = wrappedIndexer.call(arg1, arg2);
-                                    return result;
-                                }
-                            });
-                        } else {
-                            metatable.set(name, getWrapper(method));
-                        }
+        for (MethodTemplate method : template.methods)
+            indexTable.set(method.name, getWrapper(method));
+
+        for (MethodTemplate method : template.metamethods) {
+            if (method.name.equals("__index")) {
+                //Custom __index implementation. First checks the regular __index table, and if it gets NIL, then calls the custom-defined __index function.
+                metatable.set("__index", new TwoArgFunction() {
+                    final LuaFunction wrappedIndexer = getWrapper(method);
+                    @Override
+                    public LuaValue call(LuaValue arg1, LuaValue arg2) {
+                        LuaValue result = indexTable.get(arg2);
+                        if (result == LuaValue.NIL)
+                            result = wrappedIndexer.call(arg1, arg2);
+                        return result;
                     }
-                } else { //regular methods
-                    indexTable.set(name, getWrapper(method));
-                }
+                });
+            } else {
+                metatable.set(method.name, getWrapper(method));
             }
-            currentClass = currentClass.getSuperclass();
         }
 
         if (metatable.rawget("__index") == LuaValue.NIL)
@@ -92,6 +103,9 @@ public class LuaTypeManager {
             }
         }
 
+        //skip the reflection for the vector math
+        VectorMetamethods.install(clazz, metatable);
+
         metatables.put(clazz, metatable);
     }
 
@@ -106,7 +120,7 @@ public class LuaTypeManager {
         }
     }
 
-    private final Map<Class<?>, String> namesCache = new HashMap<>();
+    private static final Map<Class<?>, String> namesCache = new ConcurrentHashMap<>();
     public String getTypeName(Class<?> clazz) {
         return namesCache.computeIfAbsent(clazz, someClass -> {
             if (someClass.isAnnotationPresent(LuaTypeDoc.class))
@@ -115,54 +129,56 @@ public class LuaTypeManager {
         });
     }
 
-    private static boolean[] getRequiredNotNil(Method method) {
-        Parameter[] params = method.getParameters();
-        boolean[] result = new boolean[params.length];
-        for (int i = 0; i < params.length; i++)
-            if (params[i].isAnnotationPresent(LuaNotNil.class))
-                result[i] = true;
-        return result;
+    public VarArgFunction getWrapper(Method method) {
+        //reuse the method handle and converters already resolved for the declaring class
+        ClassTemplate template = TEMPLATES.computeIfAbsent(method.getDeclaringClass(), ClassTemplate::new);
+        for (MethodTemplate methodTemplate : template.methods) {
+            if (methodTemplate.method.equals(method))
+                return getWrapper(methodTemplate);
+        }
+
+        return getWrapper(new MethodTemplate(method));
     }
 
-    public VarArgFunction getWrapper(Method method) {
+    private VarArgFunction getWrapper(MethodTemplate template) {
+        Method method = template.method;
         return new VarArgFunction() {
 
-            private final boolean isStatic = Modifier.isStatic(method.getModifiers());
-            private Object caller;
-
+            private final boolean isStatic = template.isStatic;
+            private final int weight = template.weight;
+            private final Class<?> clazz = template.clazz;
+            private final Class<?>[] argumentTypes = template.argumentTypes;
+            //one argument array per nesting level, as the method may call back into lua which may call this function again
+            private Object[][] frames = new Object[1][argumentTypes.length];
+            private int depth = 0;
+            private final boolean[] requiredNotNil = template.requiredNotNil;
 
-            private final Class<?> clazz = method.getDeclaringClass();
-            private final Class<?>[] argumentTypes = method.getParameterTypes();
-            private final Object[] actualArgs = new Object[argumentTypes.length];
-            private final boolean[] requiredNotNil = getRequiredNotNil(method);
+            private final MethodHandle handle = template.handle;
+            private final ArgumentConverter[] converters = template.converters;
+            private final Object[] defaultValues = template.defaultValues;
 
             @Override
             public Varargs invoke(Varargs args) {
 
-                if (!isStatic)
-                    caller = args.checkuserdata(1, clazz);
+                Object caller = isStatic ? null : args.checkuserdata(1, clazz);
+
+                if (depth == frames.length) {
+                    frames = Arrays.copyOf(frames, depth * 2);
+                    for (int i = depth; i < frames.length; i++)
+                        frames[i] = new Object[argumentTypes.length];
+                }
+                Object[] actualArgs = frames[depth];
 
                 //Fill in actualArgs from args
+                int narg = args.narg();
                 for (int i = 0; i < argumentTypes.length; i++) {
                     int argIndex = i + (isStatic ? 1 : 2);
                     boolean nil = args.isnil(argIndex);
                     if (nil && requiredNotNil[i])
                         throw new LuaError("bad argument: " + method.getName() + " " + argIndex + " do not allow nil values, expected " + FiguraDocsManager.getNameFor(argumentTypes[i]));
-                    if (argIndex <= args.narg() && !nil) {
+                    if (argIndex <= narg && !nil) {
                         try {
-                            actualArgs[i] = switch (argumentTypes[i].getName()) {
-                                case "java.lang.Number", "java.lang.Double", "double" -> args.checkdouble(argIndex);
-                                case "java.lang.String" -> args.checkjstring(argIndex);
-                                case "java.lang.Boolean", "boolean" -> args.toboolean(argIndex);
-                                case "java.lang.Float", "float" -> (float) args.checkdouble(argIndex);
-                                case "java.lang.Integer", "int" -> args.checkint(argIndex);
-                                case "java.lang.Long", "long" -> args.checklong(argIndex);
-                                case "org.luaj.vm2.LuaTable" -> args.checktable(argIndex);
-                                case "org.luaj.vm2.LuaFunction" -> args.checkfunction(argIndex);
-                                case "org.luaj.vm2.LuaValue" -> args.arg(argIndex);
-                                case "java.lang.Object" -> luaToJava(args.arg(argIndex));
-                                default -> args.checkuserdata(argIndex, argumentTypes[i]);
-                            };
+                            actualArgs[i] = converters[i].convert(args, argIndex);
                         } catch (LuaError err) {
                             String expectedType = FiguraDocsManager.getNameFor(argumentTypes[i]);
                             String actualType;
@@ -173,25 +189,28 @@ public class LuaTypeManager {
                             throw new LuaError("Invalid argument " + argIndex + " to function " + method.getName() + ". Expected " + expectedType + ", but got " + actualType);
                         }
                     } else {
-                        actualArgs[i] = switch (argumentTypes[i].getName()) {
-                            case "double" -> 0D;
-                            case "int" -> 0;
-                            case "long" -> 0L;
-                            case "float" -> 0f;
-                            case "boolean" -> false;
-                            default -> null;
-                        };
+                        actualArgs[i] = defaultValues[i];
                     }
                 }
 
                 //Invoke the wrapped method
                 Object result;
+                depth++;
                 try {
-                    result = method.invoke(caller, actualArgs);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw e.getCause() instanceof LuaError l ? l : new LuaError(e.getCause());
+                    result = isStatic ? (Object) handle.invokeExact(actualArgs) : (Object) handle.invokeExact(caller, actualArgs);
+                } catch (LuaError e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new LuaError(e);
+                } finally {
+                    depth--;
+                    //don't keep the arguments alive until the next call
+                    Arrays.fill(actualArgs, null);
                 }
 
+                if (callListener != null)
+                    callListener.onCall(weight);
+
                 //Convert the return value
                 return javaToLua(result);
             }
@@ -203,6 +222,135 @@ public class LuaTypeManager {
         };
     }
 
+    /**
+     * The whitelisted methods of a class, as the metatable generation would find them.
+     * Immutable, so it is shared by every runtime.
+     */
+    private static class ClassTemplate {
+
+        //only the most recently declared metamethod, in the most specific subclass
+        private final List<MethodTemplate> metamethods = new ArrayList<>();
+        //the last one found for each name, superclasses last
+        private final List<MethodTemplate> methods;
+
+        private ClassTemplate(Class<?> clazz) {
+            Map<String, MethodTemplate> methodsByName = new LinkedHashMap<>();
+            Set<String> metamethodNames = new HashSet<>();
+
+            Class<?> currentClass = clazz;
+            while (currentClass.isAnnotationPresent(LuaWhitelist.class)) {
+                for (Method method : currentClass.getDeclaredMethods()) {
+                    if (!method.isAnnotationPresent(LuaWhitelist.class))
+                        continue;
+                    String name = method.getName();
+                    if (name.startsWith("__")) { //metamethods
+                        if (metamethodNames.add(name))
+                            metamethods.add(new MethodTemplate(method));
+                    } else { //regular methods
+                        methodsByName.put(name, new MethodTemplate(method));
+                    }
+                }
+                currentClass = currentClass.getSuperclass();
+            }
+
+            methods = List.copyOf(methodsByName.values());
+        }
+    }
+
+    /**
+     * Everything needed to call a method from lua, resolved once.
+     */
+    private static class MethodTemplate {
+
+        private final Method method;
+        private final String name;
+        private final boolean isStatic;
+        private final int weight;
+        private final Class<?> clazz;
+        private final Class<?>[] argumentTypes;
+        private final boolean[] requiredNotNil;
+        private final MethodHandle handle;
+        private final ArgumentConverter[] converters;
+        private final Object[] defaultValues;
+
+        private MethodTemplate(Method method) {
+            this.method = method;
+            this.name = method.getName();
+            this.isStatic = Modifier.isStatic(method.getModifiers());
+            LuaExpensive expensive = method.getAnnotation(LuaExpensive.class);
+            this.weight = expensive == null ? 0 : Math.max(expensive.value(), 1);
+            this.clazz = method.getDeclaringClass();
+            this.argumentTypes = method.getParameterTypes();
+            this.requiredNotNil = getRequiredNotNil(method);
+            this.handle = getSpreadHandle(method);
+            this.converters = getConverters(argumentTypes);
+            this.defaultValues = getDefaultValues(argumentTypes);
+        }
+    }
+
+    private static boolean[] getRequiredNotNil(Method method) {
+        Parameter[] params = method.getParameters();
+        boolean[] result = new boolean[params.length];
+        for (int i = 0; i < params.length; i++)
+            if (params[i].isAnnotationPresent(LuaNotNil.class))
+                result[i] = true;
+        return result;
+    }
+
+    /**
+     * Handle taking the caller (if not static) and an Object[] with all the arguments, returning an Object (null for void).
+     */
+    private static MethodHandle getSpreadHandle(Method method) {
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return handle.asType(handle.type().generic()).asSpreader(Object[].class, method.getParameterCount());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create a handle for " + method, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArgumentConverter {
+        Object convert(Varargs args, int index);
+    }
+
+    private static ArgumentConverter[] getConverters(Class<?>[] argumentTypes) {
+        ArgumentConverter[] converters = new ArgumentConverter[argumentTypes.length];
+        for (int i = 0; i < argumentTypes.length; i++) {
+            Class<?> type = argumentTypes[i];
+            converters[i] = switch (type.getName()) {
+                case "java.lang.Number", "java.lang.Double", "double" -> Varargs::checkdouble;
+                case "java.lang.String" -> Varargs::checkjstring;
+                case "java.lang.Boolean", "boolean" -> Varargs::toboolean;
+                case "java.lang.Float", "float" -> (args, index) -> (float) args.checkdouble(index);
+                case "java.lang.Integer", "int" -> Varargs::checkint;
+                case "java.lang.Long", "long" -> Varargs::checklong;
+                case "org.luaj.vm2.LuaTable" -> Varargs::checktable;
+                case "org.luaj.vm2.LuaFunction" -> Varargs::checkfunction;
+                case "org.luaj.vm2.LuaValue" -> Varargs::arg;
+                case "java.lang.Object" -> (args, index) -> luaToJava(args.arg(index));
+                default -> (args, index) -> args.checkuserdata(index, type);
+            };
+        }
+        return converters;
+    }
+
+    private static Object[] getDefaultValues(Class<?>[] argumentTypes) {
+        Object[] values = new Object[argumentTypes.length];
+        for (int i = 0; i < argumentTypes.length; i++) {
+            values[i] = switch (argumentTypes[i].getName()) {
+                case "double" -> 0D;
+                case "int" -> 0;
+                case "long" -> 0L;
+                case "float" -> 0f;
+                case "boolean" -> false;
+                default -> null;
+            };
+        }
+        return values;
+    }
+
     private LuaValue wrap(Object instance) {
         Class<?> clazz = instance.getClass();
         LuaTable metatable = metatables.get(clazz);
@@ -241,7 +389,7 @@ public class LuaTypeManager {
 
     //we need to allow string being numbers here
     //however in places like pings and print we should keep strings as strings
-    public Object luaToJava(LuaValue val) {
+    public static Object luaToJava(LuaValue val) {
         if (val.istable())
             return val.checktable();
         else if (val.isnumber())
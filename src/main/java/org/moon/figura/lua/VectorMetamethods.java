@@ -0,0 +1,165 @@
+package org.moon.figura.lua;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaUserdata;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.moon.figura.math.vector.FiguraVector;
+
+/**
+ * Hand written vector metamethods, replacing the reflective wrappers for the common cases
+ * (vector and vector, vector and number, component access), which are most of the animation math.
+ * Anything else (matrices, swizzles, errors) still goes to the original wrapper, so the behaviour is the same.
+ * Results are still new userdata, as scripts can keep a reference to any of them.
+ */
+public class VectorMetamethods {
+
+    //only turned off by the benchmarks, to compare with the reflective wrappers
+    public static boolean enabled = true;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static void install(Class<?> clazz, LuaTable metatable) {
+        if (!enabled || !FiguraVector.class.isAssignableFrom(clazz))
+            return;
+
+        Class<? extends FiguraVector> type = (Class<? extends FiguraVector>) clazz;
+        LuaValue add = metatable.rawget("__add");
+        LuaValue sub = metatable.rawget("__sub");
+        LuaValue mul = metatable.rawget("__mul");
+        LuaValue div = metatable.rawget("__div");
+        LuaValue unm = metatable.rawget("__unm");
+        LuaValue index = metatable.rawget("__index");
+
+        if (add.isfunction()) {
+            metatable.rawset("__add", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a, LuaValue b) {
+                    FiguraVector vec = cast(type, a), other = cast(type, b);
+                    if (vec != null && other != null)
+                        return wrap(vec.plus(other), metatable);
+                    return add.call(a, b);
+                }
+            });
+        }
+
+        if (sub.isfunction()) {
+            metatable.rawset("__sub", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a, LuaValue b) {
+                    FiguraVector vec = cast(type, a), other = cast(type, b);
+                    if (vec != null && other != null)
+                        return wrap(vec.minus(other), metatable);
+                    return sub.call(a, b);
+                }
+            });
+        }
+
+        if (mul.isfunction()) {
+            metatable.rawset("__mul", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a, LuaValue b) {
+                    FiguraVector vec = cast(type, a);
+                    if (vec != null) {
+                        FiguraVector other = cast(type, b);
+                        if (other != null)
+                            return wrap(vec.times(other), metatable);
+                        if (b.isnumber())
+                            return wrap(vec.scaled(b.checkdouble()), metatable);
+                    } else if (a.isnumber()) {
+                        FiguraVector other = cast(type, b);
+                        if (other != null)
+                            return wrap(other.scaled(a.checkdouble()), metatable);
+                    }
+                    return mul.call(a, b);
+                }
+            });
+        }
+
+        if (div.isfunction()) {
+            metatable.rawset("__div", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a, LuaValue b) {
+                    FiguraVector vec = cast(type, a);
+                    if (vec != null) {
+                        FiguraVector other = cast(type, b);
+                        if (other != null)
+                            return wrap(vec.dividedBy(other), metatable);
+                        if (b.isnumber()) {
+                            double d = b.checkdouble();
+                            if (d == 0)
+                                throw new LuaError("Attempt to divide vector by 0");
+                            return wrap(vec.scaled(1 / d), metatable);
+                        }
+                    }
+                    return div.call(a, b);
+                }
+            });
+        }
+
+        if (unm.isfunction()) {
+            metatable.rawset("__unm", new OneArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a) {
+                    FiguraVector vec = cast(type, a);
+                    if (vec != null)
+                        return wrap(vec.scaled(-1), metatable);
+                    return unm.call(a);
+                }
+            });
+        }
+
+        if (metatable.rawget("__len").isfunction()) {
+            metatable.rawset("__len", new OneArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a) {
+                    return LuaValue.valueOf(((FiguraVector) a.checkuserdata(type)).size());
+                }
+            });
+        }
+
+        //single components, before looking for methods, as no method has a single character name
+        if (index.isfunction()) {
+            metatable.rawset("__index", new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue a, LuaValue key) {
+                    FiguraVector vec = cast(type, a);
+                    if (vec != null) {
+                        int i = componentIndex(key);
+                        if (i >= 0 && i < vec.size())
+                            return LuaValue.valueOf(vec.index(i));
+                    }
+                    return index.call(a, key);
+                }
+            });
+        }
+    }
+
+    private static FiguraVector<?, ?> cast(Class<?> type, LuaValue value) {
+        Object o = value.touserdata();
+        return o != null && o.getClass() == type ? (FiguraVector<?, ?>) o : null;
+    }
+
+    private static LuaValue wrap(Object vec, LuaTable metatable) {
+        return new LuaUserdata(vec, metatable);
+    }
+
+    //same keys as the vectors __index, -1 for anything else
+    private static int componentIndex(LuaValue key) {
+        if (key.type() == LuaValue.TNUMBER)
+            return key.isint() ? key.toint() - 1 : -1;
+        if (key.type() != LuaValue.TSTRING || key.rawlen() != 1)
+            return -1;
+
+        return switch (key.tojstring().charAt(0)) {
+            case '1', 'x', 'r' -> 0;
+            case '2', 'y', 'g' -> 1;
+            case '3', 'z', 'b' -> 2;
+            case '4', 'w', 'a' -> 3;
+            case '5', 't' -> 4;
+            case '6', 'h' -> 5;
+            default -> -1;
+        };
+    }
+}
@@ -1,7 +1,9 @@
 package org.moon.figura.lua.api;
 
+import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
@@ -13,6 +15,9 @@ import org.moon.figura.trust.TrustContainer;
 import org.moon.figura.utils.ColorUtils;
 import org.moon.figura.utils.LuaUtils;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 @LuaWhitelist
 @LuaTypeDoc(
         name = "AvatarAPI",
@@ -23,10 +28,129 @@ public class AvatarAPI {
     private final Avatar avatar;
     public final LuaTable storedStuff = new LuaTable();
 
+    //read only copy of the stored values, read by the other avatars while the scripts run in parallel
+    private volatile LuaTable frozenStuff;
+    private volatile boolean frozen;
+    //read by another avatar while frozen, so the next freeze makes a copy
+    private volatile boolean wanted;
+
     public AvatarAPI(Avatar avatar) {
         this.avatar = avatar;
     }
 
+    /**
+     * Called before the scripts run in parallel, as the other avatars can not read the table while this script writes it.
+     * The values are only copied when another avatar read them during the last parallel run, and that one copy is shared
+     * by all the readers until the next freeze. It can't be made on the first read instead, as this script may be writing then,
+     * so an avatar which was not read for a run gives nil until the next one.
+     */
+    public void freezeStored() {
+        frozenStuff = wanted ? (LuaTable) copyStored(storedStuff, new IdentityHashMap<>()) : null;
+        wanted = false;
+        frozen = true;
+    }
+
+    public void unfreezeStored() {
+        frozen = false;
+    }
+
+    /**
+     * A stored value, as read by the scripts of any avatar.
+     */
+    public LuaValue getStored(String key) {
+        if (!frozen)
+            return storedStuff.get(key);
+
+        wanted = true;
+        LuaTable frozenStuff = this.frozenStuff;
+        return frozenStuff == null ? LuaValue.NIL : frozenStuff.get(key);
+    }
+
+    /**
+     * All the stored values, as read by the scripts of any avatar.
+     */
+    public LuaTable getStored() {
+        if (!frozen)
+            return storedStuff;
+
+        wanted = true;
+        LuaTable frozenStuff = this.frozenStuff;
+        return frozenStuff == null ? new StoredCopy() : frozenStuff;
+    }
+
+    //tables are copied, and functions dropped, as calling them would run this script from another thread
+    private static LuaValue copyStored(LuaValue value, Map<LuaValue, LuaValue> copies) {
+        if (value.isfunction())
+            return LuaValue.NIL;
+        if (!value.istable())
+            return value;
+
+        LuaValue copy = copies.get(value);
+        if (copy != null)
+            return copy;
+
+        StoredCopy result = new StoredCopy();
+        copies.put(value, result);
+
+        LuaValue key = LuaValue.NIL;
+        while (true) {
+            Varargs next = value.next(key);
+            if ((key = next.arg1()).isnil())
+                break;
+
+            LuaValue k = copyStored(key, copies);
+            LuaValue v = copyStored(next.arg(2), copies);
+            if (!k.isnil() && !v.isnil())
+                result.fill(k, v);
+        }
+
+        return result;
+    }
+
+    /**
+     * The copy is shared by the scripts of every other avatar, on their own threads, so they can only read it.
+     */
+    private static class StoredCopy extends LuaTable {
+
+        private void fill(LuaValue key, LuaValue value) {
+            super.rawset(key, value);
+        }
+
+        private static LuaError readOnly() {
+            return new LuaError("The stored values of other avatars can not be changed while the scripts run in parallel");
+        }
+
+        @Override
+        public void rawset(LuaValue key, LuaValue value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void rawset(int key, LuaValue value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void insert(int pos, LuaValue value) {
+            throw readOnly();
+        }
+
+        @Override
+        public LuaValue remove(int pos) {
+            throw readOnly();
+        }
+
+        @Override
+        public void sort(LuaValue comparator) {
+            throw readOnly();
+        }
+
+        @Override
+        public LuaValue setmetatable(LuaValue metatable) {
+            throw readOnly();
+        }
+    }
+
     @LuaWhitelist
     @LuaMethodDoc(
             overloads = @LuaFunctionOverload(
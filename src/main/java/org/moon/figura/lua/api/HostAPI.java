@@ -13,6 +13,7 @@ import org.luaj.vm2.LuaError;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.config.Config;
+import org.moon.figura.lua.LuaExpensive;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.api.entity.EntityAPI;
@@ -55,6 +56,7 @@ public class HostAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive(2)
     @LuaMethodDoc(description = "host.get_targeted_entity")
     public EntityAPI<?> getTargetedEntity() {
         if (!isHost()) return null;
@@ -17,6 +17,7 @@ import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.avatars.AvatarManager;
+import org.moon.figura.lua.LuaExpensive;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.NbtToLua;
 import org.moon.figura.lua.api.world.BlockStateAPI;
@@ -333,6 +334,7 @@ public class EntityAPI<T extends Entity> {
     }
 
     @LuaWhitelist
+    @LuaExpensive(4)
     @LuaMethodDoc(description = "entity.get_nbt")
     public LuaTable getNbt() {
         checkEntity();
@@ -349,6 +351,7 @@ public class EntityAPI<T extends Entity> {
     }
 
     @LuaWhitelist
+    @LuaExpensive
     @LuaMethodDoc(
             overloads = {
                     @LuaFunctionOverload,
@@ -388,7 +391,7 @@ public class EntityAPI<T extends Entity> {
         Avatar a = AvatarManager.getAvatar(entity);
         if (a == null || a.luaRuntime == null)
             return null;
-        return a.luaRuntime.avatar_meta.storedStuff.get(key);
+        return a.luaRuntime.avatar_meta.getStored(key);
     }
 
     @LuaWhitelist
@@ -7,6 +7,7 @@ import net.minecraft.core.particles.ParticleOptions;
 import net.minecraft.world.level.Level;
 import org.luaj.vm2.LuaError;
 import org.moon.figura.avatars.Avatar;
+import org.moon.figura.avatars.AvatarEventExecutor;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.api.world.WorldAPI;
@@ -106,8 +107,10 @@ public class ParticleAPI {
             ParticleOptions particle = ParticleArgument.readParticle(new StringReader(id));
             Level level = WorldAPI.getCurrentWorld();
 
-            if (!Minecraft.getInstance().isPaused() && level != null)
-                level.addParticle(particle, pos.x, pos.y, pos.z, vel.x, vel.y, vel.z);
+            if (!Minecraft.getInstance().isPaused() && level != null) {
+                double x0 = pos.x, y0 = pos.y, z0 = pos.z, vx = vel.x, vy = vel.y, vz = vel.z;
+                AvatarEventExecutor.runOnClientThread(() -> level.addParticle(particle, x0, y0, z0, vx, vy, vz));
+            }
         } catch (Exception e) {
             throw new LuaError(e.getMessage());
         } finally {
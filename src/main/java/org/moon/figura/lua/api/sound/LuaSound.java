@@ -9,6 +9,7 @@ import net.minecraft.sounds.SoundSource;
 import net.minecraft.util.RandomSource;
 import org.luaj.vm2.LuaError;
 import org.moon.figura.avatars.Avatar;
+import org.moon.figura.avatars.AvatarEventExecutor;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.api.world.WorldAPI;
 import org.moon.figura.lua.docs.LuaFunctionOverload;
@@ -86,13 +87,22 @@ public class LuaSound {
             throw new LuaError("Illegal argument to playSound(): " + x);
         }
 
+        //the sound engine is shared by every avatar
+        double x0 = pos.x, y0 = pos.y, z0 = pos.z;
+        float volume0 = volume, pitch0 = pitch;
+        boolean loop0 = loop;
+        AvatarEventExecutor.runOnClientThread(() -> playNow(x0, y0, z0, volume0, pitch0, loop0));
+        pos.free();
+    }
+
+    private void playNow(double x, double y, double z, float volume, float pitch, boolean loop) {
         SoundBuffer buffer = owner.customSounds.get(id);
         if (buffer != null && owner.trust.get(TrustContainer.Trust.CUSTOM_SOUNDS) == 1) {
             SoundAPI.getSoundEngine().figura$playCustomSound(
                     owner.owner,
                     id,
                     buffer,
-                    pos.x, pos.y, pos.z,
+                    x, y, z,
                     volume, pitch,
                     loop);
         } else {
@@ -102,14 +112,13 @@ public class LuaSound {
                         event, SoundSource.PLAYERS,
                         volume, pitch,
                         RandomSource.create(WorldAPI.getCurrentWorld().random.nextLong()),
-                        pos.x, pos.y, pos.z);
+                        x, y, z);
 
                 SoundAPI.getSoundEngine().figura$playSound(
                         owner.owner, id, instance, loop
                 );
             } catch (Exception ignored) {}
         }
-        pos.free();
     }
 
     public String toString() {
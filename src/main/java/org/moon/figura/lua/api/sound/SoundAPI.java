@@ -4,6 +4,7 @@ import net.minecraft.client.Minecraft;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.moon.figura.avatars.Avatar;
+import org.moon.figura.avatars.AvatarEventExecutor;
 import org.moon.figura.ducks.SoundEngineAccessor;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
@@ -85,7 +86,7 @@ public class SoundAPI {
             description = "sounds.stop_sound"
     )
     public void stopSound(String id) {
-        getSoundEngine().figura$stopSound(owner.owner, id);
+        AvatarEventExecutor.runOnClientThread(() -> getSoundEngine().figura$stopSound(owner.owner, id));
     }
 
     @LuaWhitelist
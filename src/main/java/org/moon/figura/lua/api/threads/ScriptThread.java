@@ -0,0 +1,87 @@
+package org.moon.figura.lua.api.threads;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.moon.figura.lua.FiguraLuaRuntime;
+import org.moon.figura.lua.LuaWhitelist;
+import org.moon.figura.lua.docs.LuaMethodDoc;
+import org.moon.figura.lua.docs.LuaTypeDoc;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A function running across ticks, paused whenever it uses its instructions of the tick, instead of erroring.
+ */
+@LuaWhitelist
+@LuaTypeDoc(
+        name = "ScriptThread",
+        description = "script_thread"
+)
+public class ScriptThread {
+
+    private final FiguraLuaRuntime runtime;
+    private final String name;
+    private LuaThread thread;
+
+    //a stopped lua thread keeps its java thread until the gc collects it
+    private WeakReference<LuaThread> stopped;
+
+    public ScriptThread(FiguraLuaRuntime runtime, LuaFunction func, String name) {
+        this.runtime = runtime;
+        this.name = name;
+        this.thread = runtime.newThread(func);
+    }
+
+    /**
+     * Runs the thread until it finishes, yields, or uses all the given instructions
+     * @return the instructions used
+     */
+    public int resume(int instructions) {
+        LuaThread thread = this.thread;
+        runtime.setThreadInstructionLimit(thread, instructions);
+        Varargs result = thread.resume(LuaValue.NONE);
+        int used = thread.state.bytecodes;
+
+        if (!result.arg1().toboolean()) {
+            this.thread = null;
+            throw new LuaError("Error in thread \"" + name + "\": " + result.arg(2).tojstring());
+        }
+        return used;
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(description = "script_thread.is_alive")
+    public boolean isAlive() {
+        return thread != null && !thread.getStatus().equals("dead");
+    }
+
+    //the lua thread is left to the gc, which also stops the java thread behind it
+    @LuaWhitelist
+    @LuaMethodDoc(description = "script_thread.stop")
+    public void stop() {
+        if (isAlive())
+            stopped = new WeakReference<>(thread);
+        thread = null;
+    }
+
+    /**
+     * @return true if stopped, but the java thread behind it may still be around
+     */
+    public boolean isStopping() {
+        return stopped != null && stopped.get() != null;
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(description = "script_thread.get_name")
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptThread (" + name + ")";
+    }
+}
@@ -0,0 +1,118 @@
+package org.moon.figura.lua.api.threads;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaFunction;
+import org.moon.figura.lua.FiguraLuaRuntime;
+import org.moon.figura.lua.LuaNotNil;
+import org.moon.figura.lua.LuaWhitelist;
+import org.moon.figura.lua.docs.LuaFunctionOverload;
+import org.moon.figura.lua.docs.LuaMethodDoc;
+import org.moon.figura.lua.docs.LuaTypeDoc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@LuaWhitelist
+@LuaTypeDoc(
+        name = "ThreadsAPI",
+        description = "threads"
+)
+public class ThreadsAPI {
+
+    private static final int MAX_THREADS = 64;
+
+    private final FiguraLuaRuntime runtime;
+    private final List<ScriptThread> threads = new ArrayList<>();
+
+    //stopped threads still count towards the limit until they are collected, as each one holds a java thread
+    private final List<ScriptThread> stopping = new ArrayList<>();
+
+    public ThreadsAPI(FiguraLuaRuntime runtime) {
+        this.runtime = runtime;
+    }
+
+    /**
+     * Resumes every running thread, sharing the instructions between them.
+     * @param budget instructions for all threads together
+     * @return the instructions used
+     */
+    public int tick(int budget) {
+        removeDead();
+        if (threads.isEmpty() || budget <= 0)
+            return 0;
+
+        int slice = Math.max(budget / threads.size(), 1);
+        int used = 0;
+        //copy, as a thread may start new threads
+        for (ScriptThread thread : List.copyOf(threads)) {
+            if (thread.isAlive())
+                used += thread.resume(slice);
+        }
+        return used;
+    }
+
+    public boolean isEmpty() {
+        return threads.isEmpty();
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = {
+                    @LuaFunctionOverload(
+                            argumentTypes = LuaFunction.class,
+                            argumentNames = "func"
+                    ),
+                    @LuaFunctionOverload(
+                            argumentTypes = {LuaFunction.class, String.class},
+                            argumentNames = {"func", "name"}
+                    )
+            },
+            description = "threads.start"
+    )
+    public ScriptThread start(@LuaNotNil LuaFunction func, String name) {
+        removeDead();
+        if (threads.size() + stopping.size() >= MAX_THREADS)
+            throw new LuaError("Reached maximum limit of " + MAX_THREADS + " threads!");
+
+        ScriptThread thread = new ScriptThread(runtime, func, name == null ? "" : name);
+        threads.add(thread);
+        return thread;
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(description = "threads.yield")
+    public void yield() {
+        runtime.yieldThread();
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(description = "threads.stop_all")
+    public void stopAll() {
+        for (ScriptThread thread : threads)
+            thread.stop();
+        removeDead();
+    }
+
+    @LuaWhitelist
+    @LuaMethodDoc(description = "threads.get_count")
+    public int getCount() {
+        removeDead();
+        return threads.size();
+    }
+
+    private void removeDead() {
+        threads.removeIf(thread -> {
+            if (thread.isAlive())
+                return false;
+            if (thread.isStopping())
+                stopping.add(thread);
+            return true;
+        });
+        stopping.removeIf(thread -> !thread.isStopping());
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadsAPI";
+    }
+}
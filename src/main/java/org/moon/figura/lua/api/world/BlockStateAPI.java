@@ -16,6 +16,7 @@ import net.minecraft.world.level.material.Material;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.shapes.VoxelShape;
 import org.luaj.vm2.LuaTable;
+import org.moon.figura.lua.LuaExpensive;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.NbtToLua;
 import org.moon.figura.lua.docs.LuaFieldDoc;
@@ -272,6 +273,7 @@ public class BlockStateAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive(4)
     @LuaMethodDoc(description = "blockstate.get_entity_data")
     public LuaTable getEntityData() {
         BlockEntity entity = WorldAPI.getCurrentWorld().getBlockEntity(getBlockPos());
@@ -10,6 +10,7 @@ import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.avatars.AvatarManager;
+import org.moon.figura.lua.LuaExpensive;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.api.entity.EntityAPI;
@@ -39,6 +40,7 @@ public class WorldAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive
     @LuaMethodDoc(
             overloads = {
                     @LuaFunctionOverload(
@@ -60,6 +62,7 @@ public class WorldAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive
     @LuaMethodDoc(
             overloads = {
                     @LuaFunctionOverload(
@@ -288,6 +291,7 @@ public class WorldAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive(2)
     @LuaMethodDoc(description = "world.get_players")
     public static Map<String, EntityAPI<?>> getPlayers() {
         HashMap<String, EntityAPI<?>> playerList = new HashMap<>();
@@ -297,6 +301,7 @@ public class WorldAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive
     @LuaMethodDoc(
             overloads = @LuaFunctionOverload(
                     argumentTypes = String.class,
@@ -313,12 +318,13 @@ public class WorldAPI {
     }
 
     @LuaWhitelist
+    @LuaExpensive(4)
     @LuaMethodDoc(description = "world.player_vars")
     public static Map<String, LuaTable> playerVars() {
         HashMap<String, LuaTable> playerList = new HashMap<>();
         for (Player player : getCurrentWorld().players()) {
             Avatar avatar = AvatarManager.getAvatarForPlayer(player.getUUID());
-            LuaTable tbl = avatar == null || avatar.luaRuntime == null ? new LuaTable() : avatar.luaRuntime.avatar_meta.storedStuff;
+            LuaTable tbl = avatar == null || avatar.luaRuntime == null ? new LuaTable() : avatar.luaRuntime.avatar_meta.getStored();
             playerList.put(player.getName().getString(), tbl);
         }
         return playerList;
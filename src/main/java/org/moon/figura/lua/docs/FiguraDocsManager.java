@@ -28,6 +28,8 @@ import org.moon.figura.lua.api.ping.PingAPI;
 import org.moon.figura.lua.api.ping.PingFunction;
 import org.moon.figura.lua.api.sound.LuaSound;
 import org.moon.figura.lua.api.sound.SoundAPI;
+import org.moon.figura.lua.api.threads.ScriptThread;
+import org.moon.figura.lua.api.threads.ThreadsAPI;
 import org.moon.figura.math.matrix.FiguraMat2;
 import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
@@ -210,6 +212,11 @@ public class FiguraDocsManager {
                 PingAPI.class,
                 PingFunction.class
         ));
+
+        put("threads", List.of(
+                ThreadsAPI.class,
+                ScriptThread.class
+        ));
     }};
     private static final Map<String, List<FiguraDoc>> GENERATED_CHILDREN = new HashMap<>();
 
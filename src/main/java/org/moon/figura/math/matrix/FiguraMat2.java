@@ -13,6 +13,8 @@ import org.moon.figura.utils.LuaUtils;
 import org.moon.figura.utils.caching.CacheStack;
 import org.moon.figura.utils.caching.CacheUtils;
 
+import java.util.Arrays;
+
 @LuaWhitelist
 @LuaTypeDoc(
         name = "Matrix2",
@@ -91,6 +93,11 @@ public class FiguraMat2 extends FiguraMatrix<FiguraMat2, FiguraVec2> {
         return getString(v11, v12, v21, v22);
     }
 
+    @Override
+    public String snapshot() {
+        return Arrays.toString(new double[] {v11, v12, v21, v22});
+    }
+
     @Override
     @LuaWhitelist
     @LuaMethodDoc(
@@ -16,6 +16,7 @@ import org.moon.figura.utils.caching.CacheStack;
 import org.moon.figura.utils.caching.CacheUtils;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 @LuaWhitelist
 @LuaTypeDoc(
@@ -132,6 +133,11 @@ public class FiguraMat3 extends FiguraMatrix<FiguraMat3, FiguraVec3> {
         return getString(v11, v12, v13, v21, v22, v23, v31, v32, v33);
     }
 
+    @Override
+    public String snapshot() {
+        return Arrays.toString(new double[] {v11, v12, v13, v21, v22, v23, v31, v32, v33});
+    }
+
     @Override
     @LuaWhitelist
     @LuaMethodDoc(
@@ -17,6 +17,7 @@ import org.moon.figura.utils.caching.CacheStack;
 import org.moon.figura.utils.caching.CacheUtils;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 @LuaWhitelist
 @LuaTypeDoc(
@@ -143,6 +144,11 @@ public class FiguraMat4 extends FiguraMatrix<FiguraMat4, FiguraVec4> {
         return getString(v11, v12, v13, v14, v21, v22, v23, v24, v31, v32, v33, v34, v41, v42, v43, v44);
     }
 
+    @Override
+    public String snapshot() {
+        return Arrays.toString(new double[] {v11, v12, v13, v14, v21, v22, v23, v24, v31, v32, v33, v34, v41, v42, v43, v44});
+    }
+
     @Override
     @LuaWhitelist
     @LuaMethodDoc(
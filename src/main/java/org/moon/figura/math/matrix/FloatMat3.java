@@ -0,0 +1,245 @@
+package org.moon.figura.math.matrix;
+
+import com.mojang.math.Matrix3f;
+import org.moon.figura.ducks.Matrix3fAccessor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Float 3x3 matrix used by the render path, laid out like the vanilla Matrix3f.
+ * Not pooled and not exposed to lua, FiguraMat3 is the lua wrapper, converted only when a script asks for it.
+ * Operations follow the same order as FiguraMat3.
+ */
+public class FloatMat3 {
+
+    //Values are named as v(ROW)(COLUMN), both 1-indexed like in actual math
+    public float v11, v12, v13, v21, v22, v23, v31, v32, v33;
+
+    public FloatMat3() {
+        reset();
+    }
+
+    public FloatMat3 reset() {
+        v12 = v13 = v21 = v23 = v31 = v32 = 0f;
+        v11 = v22 = v33 = 1f;
+        return this;
+    }
+
+    public boolean isIdentity() {
+        return
+                v11 == 1f && v12 == 0f && v13 == 0f &&
+                v21 == 0f && v22 == 1f && v23 == 0f &&
+                v31 == 0f && v32 == 0f && v33 == 1f;
+    }
+
+    public FloatMat3 set(FloatMat3 o) {
+        v11 = o.v11; v12 = o.v12; v13 = o.v13;
+        v21 = o.v21; v22 = o.v22; v23 = o.v23;
+        v31 = o.v31; v32 = o.v32; v33 = o.v33;
+        return this;
+    }
+
+    public FloatMat3 set(FiguraMat3 o) {
+        v11 = (float) o.v11; v12 = (float) o.v12; v13 = (float) o.v13;
+        v21 = (float) o.v21; v22 = (float) o.v22; v23 = (float) o.v23;
+        v31 = (float) o.v31; v32 = (float) o.v32; v33 = (float) o.v33;
+        return this;
+    }
+
+    public FloatMat3 set(Matrix3f matrix) {
+        if ((Object) matrix instanceof Matrix3fAccessor accessor) {
+            accessor.figura$copyTo(this);
+            return this;
+        }
+
+        //without the mixin (like in the benchmarks) go through a buffer
+        FloatBuffer buffer = FloatBuffer.allocate(9);
+        matrix.store(buffer);
+        v11 = buffer.get(0); v21 = buffer.get(1); v31 = buffer.get(2);
+        v12 = buffer.get(3); v22 = buffer.get(4); v32 = buffer.get(5);
+        v13 = buffer.get(6); v23 = buffer.get(7); v33 = buffer.get(8);
+        return this;
+    }
+
+    public void copyTo(Matrix3f matrix) {
+        if ((Object) matrix instanceof Matrix3fAccessor accessor) {
+            accessor.figura$set(this);
+            return;
+        }
+
+        FloatBuffer buffer = FloatBuffer.wrap(new float[] {
+                v11, v21, v31,
+                v12, v22, v32,
+                v13, v23, v33
+        });
+        matrix.load(buffer);
+    }
+
+    public Matrix3f toMatrix3f() {
+        Matrix3f result = new Matrix3f();
+        copyTo(result);
+        return result;
+    }
+
+    public FiguraMat3 toFiguraMat3() {
+        return FiguraMat3.of(v11, v21, v31, v12, v22, v32, v13, v23, v33);
+    }
+
+    public boolean equals(FloatMat3 o) {
+        return
+                v11 == o.v11 && v12 == o.v12 && v13 == o.v13 &&
+                v21 == o.v21 && v22 == o.v22 && v23 == o.v23 &&
+                v31 == o.v31 && v32 == o.v32 && v33 == o.v33;
+    }
+
+    //this = o * this
+    public FloatMat3 multiply(FloatMat3 o) {
+        float nv11 = o.v11 * v11 + o.v12 * v21 + o.v13 * v31;
+        float nv12 = o.v11 * v12 + o.v12 * v22 + o.v13 * v32;
+        float nv13 = o.v11 * v13 + o.v12 * v23 + o.v13 * v33;
+
+        float nv21 = o.v21 * v11 + o.v22 * v21 + o.v23 * v31;
+        float nv22 = o.v21 * v12 + o.v22 * v22 + o.v23 * v32;
+        float nv23 = o.v21 * v13 + o.v22 * v23 + o.v23 * v33;
+
+        float nv31 = o.v31 * v11 + o.v32 * v21 + o.v33 * v31;
+        float nv32 = o.v31 * v12 + o.v32 * v22 + o.v33 * v32;
+        float nv33 = o.v31 * v13 + o.v32 * v23 + o.v33 * v33;
+
+        v11 = nv11; v12 = nv12; v13 = nv13;
+        v21 = nv21; v22 = nv22; v23 = nv23;
+        v31 = nv31; v32 = nv32; v33 = nv33;
+        return this;
+    }
+
+    //this = this * o
+    public FloatMat3 rightMultiply(FloatMat3 o) {
+        float nv11 = v11 * o.v11 + v12 * o.v21 + v13 * o.v31;
+        float nv12 = v11 * o.v12 + v12 * o.v22 + v13 * o.v32;
+        float nv13 = v11 * o.v13 + v12 * o.v23 + v13 * o.v33;
+
+        float nv21 = v21 * o.v11 + v22 * o.v21 + v23 * o.v31;
+        float nv22 = v21 * o.v12 + v22 * o.v22 + v23 * o.v32;
+        float nv23 = v21 * o.v13 + v22 * o.v23 + v23 * o.v33;
+
+        float nv31 = v31 * o.v11 + v32 * o.v21 + v33 * o.v31;
+        float nv32 = v31 * o.v12 + v32 * o.v22 + v33 * o.v32;
+        float nv33 = v31 * o.v13 + v32 * o.v23 + v33 * o.v33;
+
+        v11 = nv11; v12 = nv12; v13 = nv13;
+        v21 = nv21; v22 = nv22; v23 = nv23;
+        v31 = nv31; v32 = nv32; v33 = nv33;
+        return this;
+    }
+
+    public FloatMat3 scale(float x, float y, float z) {
+        v11 *= x; v12 *= x; v13 *= x;
+        v21 *= y; v22 *= y; v23 *= y;
+        v31 *= z; v32 *= z; v33 *= z;
+        return this;
+    }
+
+    public FloatMat3 translate(float x, float y) {
+        v11 += x * v31; v12 += x * v32; v13 += x * v33;
+        v21 += y * v31; v22 += y * v32; v23 += y * v33;
+        return this;
+    }
+
+    public FloatMat3 rotateX(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv21 = c * v21 - s * v31;
+        float nv22 = c * v22 - s * v32;
+        float nv23 = c * v23 - s * v33;
+
+        v31 = s * v21 + c * v31;
+        v32 = s * v22 + c * v32;
+        v33 = s * v23 + c * v33;
+
+        v21 = nv21; v22 = nv22; v23 = nv23;
+        return this;
+    }
+
+    public FloatMat3 rotateY(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv11 = c * v11 + s * v31;
+        float nv12 = c * v12 + s * v32;
+        float nv13 = c * v13 + s * v33;
+
+        v31 = c * v31 - s * v11;
+        v32 = c * v32 - s * v12;
+        v33 = c * v33 - s * v13;
+
+        v11 = nv11; v12 = nv12; v13 = nv13;
+        return this;
+    }
+
+    public FloatMat3 rotateZ(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv11 = c * v11 - s * v21;
+        float nv12 = c * v12 - s * v22;
+        float nv13 = c * v13 - s * v23;
+
+        v21 = c * v21 + s * v11;
+        v22 = c * v22 + s * v12;
+        v23 = c * v23 + s * v13;
+
+        v11 = nv11; v12 = nv12; v13 = nv13;
+        return this;
+    }
+
+    //Rotates using ZYX matrix order, meaning the X axis, then Y, then Z.
+    public FloatMat3 rotateZYX(double x, double y, double z) {
+        x = Math.toRadians(x);
+        y = Math.toRadians(y);
+        z = Math.toRadians(z);
+
+        float a = (float) Math.cos(x);
+        float b = (float) Math.sin(x);
+        float c = (float) Math.cos(y);
+        float d = (float) Math.sin(y);
+        float e = (float) Math.cos(z);
+        float f = (float) Math.sin(z);
+
+        float bc = b * c;
+        float ac = a * c;
+        float ce = c * e;
+        float cf = c * f;
+        float p1 = (b * d * e - a * f);
+        float p2 = (a * d * e + b * f);
+        float p3 = (a * e + b * d * f);
+        float p4 = (a * d * f - b * e);
+
+        float nv11 = ce * v11 + p1 * v21 + p2 * v31;
+        float nv21 = cf * v11 + p3 * v21 + p4 * v31;
+        float nv31 = -d * v11 + bc * v21 + ac * v31;
+
+        float nv12 = ce * v12 + p1 * v22 + p2 * v32;
+        float nv22 = cf * v12 + p3 * v22 + p4 * v32;
+        float nv32 = -d * v12 + bc * v22 + ac * v32;
+
+        float nv13 = ce * v13 + p1 * v23 + p2 * v33;
+        float nv23 = cf * v13 + p3 * v23 + p4 * v33;
+        float nv33 = -d * v13 + bc * v23 + ac * v33;
+
+        v11 = nv11; v21 = nv21; v31 = nv31;
+        v12 = nv12; v22 = nv22; v32 = nv32;
+        v13 = nv13; v23 = nv23; v33 = nv33;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + v11 + ", " + v12 + ", " + v13 + "; " +
+                v21 + ", " + v22 + ", " + v23 + "; " +
+                v31 + ", " + v32 + ", " + v33 + "]";
+    }
+}
@@ -0,0 +1,274 @@
+package org.moon.figura.math.matrix;
+
+import com.mojang.math.Matrix4f;
+import org.moon.figura.ducks.Matrix4fAccessor;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Float 4x4 matrix used by the render path, laid out like the vanilla Matrix4f.
+ * Not pooled and not exposed to lua, FiguraMat4 is the lua wrapper, converted only when a script asks for it.
+ * Operations follow the same order as FiguraMat4.
+ */
+public class FloatMat4 {
+
+    //Values are named as v(ROW)(COLUMN), both 1-indexed like in actual math
+    public float v11, v12, v13, v14, v21, v22, v23, v24, v31, v32, v33, v34, v41, v42, v43, v44;
+
+    public FloatMat4() {
+        reset();
+    }
+
+    public FloatMat4 reset() {
+        v12 = v13 = v14 = v21 = v23 = v24 = v31 = v32 = v34 = v41 = v42 = v43 = 0f;
+        v11 = v22 = v33 = v44 = 1f;
+        return this;
+    }
+
+    public FloatMat4 set(FloatMat4 o) {
+        v11 = o.v11; v12 = o.v12; v13 = o.v13; v14 = o.v14;
+        v21 = o.v21; v22 = o.v22; v23 = o.v23; v24 = o.v24;
+        v31 = o.v31; v32 = o.v32; v33 = o.v33; v34 = o.v34;
+        v41 = o.v41; v42 = o.v42; v43 = o.v43; v44 = o.v44;
+        return this;
+    }
+
+    public FloatMat4 set(FiguraMat4 o) {
+        v11 = (float) o.v11; v12 = (float) o.v12; v13 = (float) o.v13; v14 = (float) o.v14;
+        v21 = (float) o.v21; v22 = (float) o.v22; v23 = (float) o.v23; v24 = (float) o.v24;
+        v31 = (float) o.v31; v32 = (float) o.v32; v33 = (float) o.v33; v34 = (float) o.v34;
+        v41 = (float) o.v41; v42 = (float) o.v42; v43 = (float) o.v43; v44 = (float) o.v44;
+        return this;
+    }
+
+    public FloatMat4 set(Matrix4f matrix) {
+        if ((Object) matrix instanceof Matrix4fAccessor accessor) {
+            accessor.figura$copyTo(this);
+            return this;
+        }
+
+        //without the mixin (like in the benchmarks) go through a buffer
+        FloatBuffer buffer = FloatBuffer.allocate(16);
+        matrix.store(buffer);
+        v11 = buffer.get(0); v21 = buffer.get(1); v31 = buffer.get(2); v41 = buffer.get(3);
+        v12 = buffer.get(4); v22 = buffer.get(5); v32 = buffer.get(6); v42 = buffer.get(7);
+        v13 = buffer.get(8); v23 = buffer.get(9); v33 = buffer.get(10); v43 = buffer.get(11);
+        v14 = buffer.get(12); v24 = buffer.get(13); v34 = buffer.get(14); v44 = buffer.get(15);
+        return this;
+    }
+
+    public void copyTo(Matrix4f matrix) {
+        if ((Object) matrix instanceof Matrix4fAccessor accessor) {
+            accessor.figura$set(this);
+            return;
+        }
+
+        FloatBuffer buffer = FloatBuffer.wrap(new float[] {
+                v11, v21, v31, v41,
+                v12, v22, v32, v42,
+                v13, v23, v33, v43,
+                v14, v24, v34, v44
+        });
+        matrix.load(buffer);
+    }
+
+    public Matrix4f toMatrix4f() {
+        Matrix4f result = new Matrix4f();
+        copyTo(result);
+        return result;
+    }
+
+    public FiguraMat4 toFiguraMat4() {
+        return FiguraMat4.of(v11, v21, v31, v41, v12, v22, v32, v42, v13, v23, v33, v43, v14, v24, v34, v44);
+    }
+
+    public boolean equals(FloatMat4 o) {
+        return
+                v11 == o.v11 && v12 == o.v12 && v13 == o.v13 && v14 == o.v14 &&
+                v21 == o.v21 && v22 == o.v22 && v23 == o.v23 && v24 == o.v24 &&
+                v31 == o.v31 && v32 == o.v32 && v33 == o.v33 && v34 == o.v34 &&
+                v41 == o.v41 && v42 == o.v42 && v43 == o.v43 && v44 == o.v44;
+    }
+
+    //this = o * this
+    public FloatMat4 multiply(FloatMat4 o) {
+        float nv11 = o.v11 * v11 + o.v12 * v21 + o.v13 * v31 + o.v14 * v41;
+        float nv12 = o.v11 * v12 + o.v12 * v22 + o.v13 * v32 + o.v14 * v42;
+        float nv13 = o.v11 * v13 + o.v12 * v23 + o.v13 * v33 + o.v14 * v43;
+        float nv14 = o.v11 * v14 + o.v12 * v24 + o.v13 * v34 + o.v14 * v44;
+
+        float nv21 = o.v21 * v11 + o.v22 * v21 + o.v23 * v31 + o.v24 * v41;
+        float nv22 = o.v21 * v12 + o.v22 * v22 + o.v23 * v32 + o.v24 * v42;
+        float nv23 = o.v21 * v13 + o.v22 * v23 + o.v23 * v33 + o.v24 * v43;
+        float nv24 = o.v21 * v14 + o.v22 * v24 + o.v23 * v34 + o.v24 * v44;
+
+        float nv31 = o.v31 * v11 + o.v32 * v21 + o.v33 * v31 + o.v34 * v41;
+        float nv32 = o.v31 * v12 + o.v32 * v22 + o.v33 * v32 + o.v34 * v42;
+        float nv33 = o.v31 * v13 + o.v32 * v23 + o.v33 * v33 + o.v34 * v43;
+        float nv34 = o.v31 * v14 + o.v32 * v24 + o.v33 * v34 + o.v34 * v44;
+
+        float nv41 = o.v41 * v11 + o.v42 * v21 + o.v43 * v31 + o.v44 * v41;
+        float nv42 = o.v41 * v12 + o.v42 * v22 + o.v43 * v32 + o.v44 * v42;
+        float nv43 = o.v41 * v13 + o.v42 * v23 + o.v43 * v33 + o.v44 * v43;
+        float nv44 = o.v41 * v14 + o.v42 * v24 + o.v43 * v34 + o.v44 * v44;
+
+        v11 = nv11; v12 = nv12; v13 = nv13; v14 = nv14;
+        v21 = nv21; v22 = nv22; v23 = nv23; v24 = nv24;
+        v31 = nv31; v32 = nv32; v33 = nv33; v34 = nv34;
+        v41 = nv41; v42 = nv42; v43 = nv43; v44 = nv44;
+        return this;
+    }
+
+    //this = this * o
+    public FloatMat4 rightMultiply(FloatMat4 o) {
+        float nv11 = v11 * o.v11 + v12 * o.v21 + v13 * o.v31 + v14 * o.v41;
+        float nv12 = v11 * o.v12 + v12 * o.v22 + v13 * o.v32 + v14 * o.v42;
+        float nv13 = v11 * o.v13 + v12 * o.v23 + v13 * o.v33 + v14 * o.v43;
+        float nv14 = v11 * o.v14 + v12 * o.v24 + v13 * o.v34 + v14 * o.v44;
+
+        float nv21 = v21 * o.v11 + v22 * o.v21 + v23 * o.v31 + v24 * o.v41;
+        float nv22 = v21 * o.v12 + v22 * o.v22 + v23 * o.v32 + v24 * o.v42;
+        float nv23 = v21 * o.v13 + v22 * o.v23 + v23 * o.v33 + v24 * o.v43;
+        float nv24 = v21 * o.v14 + v22 * o.v24 + v23 * o.v34 + v24 * o.v44;
+
+        float nv31 = v31 * o.v11 + v32 * o.v21 + v33 * o.v31 + v34 * o.v41;
+        float nv32 = v31 * o.v12 + v32 * o.v22 + v33 * o.v32 + v34 * o.v42;
+        float nv33 = v31 * o.v13 + v32 * o.v23 + v33 * o.v33 + v34 * o.v43;
+        float nv34 = v31 * o.v14 + v32 * o.v24 + v33 * o.v34 + v34 * o.v44;
+
+        float nv41 = v41 * o.v11 + v42 * o.v21 + v43 * o.v31 + v44 * o.v41;
+        float nv42 = v41 * o.v12 + v42 * o.v22 + v43 * o.v32 + v44 * o.v42;
+        float nv43 = v41 * o.v13 + v42 * o.v23 + v43 * o.v33 + v44 * o.v43;
+        float nv44 = v41 * o.v14 + v42 * o.v24 + v43 * o.v34 + v44 * o.v44;
+
+        v11 = nv11; v12 = nv12; v13 = nv13; v14 = nv14;
+        v21 = nv21; v22 = nv22; v23 = nv23; v24 = nv24;
+        v31 = nv31; v32 = nv32; v33 = nv33; v34 = nv34;
+        v41 = nv41; v42 = nv42; v43 = nv43; v44 = nv44;
+        return this;
+    }
+
+    public FloatMat4 scale(float x, float y, float z) {
+        v11 *= x; v12 *= x; v13 *= x; v14 *= x;
+        v21 *= y; v22 *= y; v23 *= y; v24 *= y;
+        v31 *= z; v32 *= z; v33 *= z; v34 *= z;
+        return this;
+    }
+
+    public FloatMat4 translate(float x, float y, float z) {
+        v11 += x * v41; v12 += x * v42; v13 += x * v43; v14 += x * v44;
+        v21 += y * v41; v22 += y * v42; v23 += y * v43; v24 += y * v44;
+        v31 += z * v41; v32 += z * v42; v33 += z * v43; v34 += z * v44;
+        return this;
+    }
+
+    public FloatMat4 rotateX(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv21 = c * v21 - s * v31;
+        float nv22 = c * v22 - s * v32;
+        float nv23 = c * v23 - s * v33;
+        float nv24 = c * v24 - s * v34;
+
+        v31 = s * v21 + c * v31;
+        v32 = s * v22 + c * v32;
+        v33 = s * v23 + c * v33;
+        v34 = s * v24 + c * v34;
+
+        v21 = nv21; v22 = nv22; v23 = nv23; v24 = nv24;
+        return this;
+    }
+
+    public FloatMat4 rotateY(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv11 = c * v11 + s * v31;
+        float nv12 = c * v12 + s * v32;
+        float nv13 = c * v13 + s * v33;
+        float nv14 = c * v14 + s * v34;
+
+        v31 = c * v31 - s * v11;
+        v32 = c * v32 - s * v12;
+        v33 = c * v33 - s * v13;
+        v34 = c * v34 - s * v14;
+
+        v11 = nv11; v12 = nv12; v13 = nv13; v14 = nv14;
+        return this;
+    }
+
+    public FloatMat4 rotateZ(double degrees) {
+        double rad = Math.toRadians(degrees);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+
+        float nv11 = c * v11 - s * v21;
+        float nv12 = c * v12 - s * v22;
+        float nv13 = c * v13 - s * v23;
+        float nv14 = c * v14 - s * v24;
+
+        v21 = c * v21 + s * v11;
+        v22 = c * v22 + s * v12;
+        v23 = c * v23 + s * v13;
+        v24 = c * v24 + s * v14;
+
+        v11 = nv11; v12 = nv12; v13 = nv13; v14 = nv14;
+        return this;
+    }
+
+    //Rotates using ZYX matrix order, meaning the X axis, then Y, then Z.
+    public FloatMat4 rotateZYX(double x, double y, double z) {
+        x = Math.toRadians(x);
+        y = Math.toRadians(y);
+        z = Math.toRadians(z);
+
+        float a = (float) Math.cos(x);
+        float b = (float) Math.sin(x);
+        float c = (float) Math.cos(y);
+        float d = (float) Math.sin(y);
+        float e = (float) Math.cos(z);
+        float f = (float) Math.sin(z);
+
+        float bc = b * c;
+        float ac = a * c;
+        float ce = c * e;
+        float cf = c * f;
+        float p1 = (b * d * e - a * f);
+        float p2 = (a * d * e + b * f);
+        float p3 = (a * e + b * d * f);
+        float p4 = (a * d * f - b * e);
+
+        float nv11 = ce * v11 + p1 * v21 + p2 * v31;
+        float nv21 = cf * v11 + p3 * v21 + p4 * v31;
+        float nv31 = -d * v11 + bc * v21 + ac * v31;
+
+        float nv12 = ce * v12 + p1 * v22 + p2 * v32;
+        float nv22 = cf * v12 + p3 * v22 + p4 * v32;
+        float nv32 = -d * v12 + bc * v22 + ac * v32;
+
+        float nv13 = ce * v13 + p1 * v23 + p2 * v33;
+        float nv23 = cf * v13 + p3 * v23 + p4 * v33;
+        float nv33 = -d * v13 + bc * v23 + ac * v33;
+
+        float nv14 = ce * v14 + p1 * v24 + p2 * v34;
+        float nv24 = cf * v14 + p3 * v24 + p4 * v34;
+        float nv34 = -d * v14 + bc * v24 + ac * v34;
+
+        v11 = nv11; v21 = nv21; v31 = nv31;
+        v12 = nv12; v22 = nv22; v32 = nv32;
+        v13 = nv13; v23 = nv23; v33 = nv33;
+        v14 = nv14; v24 = nv24; v34 = nv34;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + v11 + ", " + v12 + ", " + v13 + ", " + v14 + "; " +
+                v21 + ", " + v22 + ", " + v23 + ", " + v24 + "; " +
+                v31 + ", " + v32 + ", " + v33 + ", " + v34 + "; " +
+                v41 + ", " + v42 + ", " + v43 + ", " + v44 + "]";
+    }
+}
@@ -111,6 +111,15 @@ public abstract class FiguraVector<T extends FiguraVector<T, M>, M extends Figur
 
     public abstract String toString();
 
+    //unlike toString(), not rounded
+    @Override
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size(); i++)
+            sb.append(index(i)).append(';');
+        return sb.toString();
+    }
+
     protected static String getString(Double... d) {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
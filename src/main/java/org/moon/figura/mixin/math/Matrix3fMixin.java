@@ -0,0 +1,27 @@
+package org.moon.figura.mixin.math;
+
+import com.mojang.math.Matrix3f;
+import org.moon.figura.ducks.Matrix3fAccessor;
+import org.moon.figura.math.matrix.FloatMat3;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+
+@Mixin(Matrix3f.class)
+public class Matrix3fMixin implements Matrix3fAccessor {
+
+    @Shadow protected float m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+    @Override
+    public void figura$set(FloatMat3 matrix) {
+        m00 = matrix.v11; m01 = matrix.v12; m02 = matrix.v13;
+        m10 = matrix.v21; m11 = matrix.v22; m12 = matrix.v23;
+        m20 = matrix.v31; m21 = matrix.v32; m22 = matrix.v33;
+    }
+
+    @Override
+    public void figura$copyTo(FloatMat3 matrix) {
+        matrix.v11 = m00; matrix.v12 = m01; matrix.v13 = m02;
+        matrix.v21 = m10; matrix.v22 = m11; matrix.v23 = m12;
+        matrix.v31 = m20; matrix.v32 = m21; matrix.v33 = m22;
+    }
+}
@@ -0,0 +1,29 @@
+package org.moon.figura.mixin.math;
+
+import com.mojang.math.Matrix4f;
+import org.moon.figura.ducks.Matrix4fAccessor;
+import org.moon.figura.math.matrix.FloatMat4;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+
+@Mixin(Matrix4f.class)
+public class Matrix4fMixin implements Matrix4fAccessor {
+
+    @Shadow protected float m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33;
+
+    @Override
+    public void figura$set(FloatMat4 matrix) {
+        m00 = matrix.v11; m01 = matrix.v12; m02 = matrix.v13; m03 = matrix.v14;
+        m10 = matrix.v21; m11 = matrix.v22; m12 = matrix.v23; m13 = matrix.v24;
+        m20 = matrix.v31; m21 = matrix.v32; m22 = matrix.v33; m23 = matrix.v34;
+        m30 = matrix.v41; m31 = matrix.v42; m32 = matrix.v43; m33 = matrix.v44;
+    }
+
+    @Override
+    public void figura$copyTo(FloatMat4 matrix) {
+        matrix.v11 = m00; matrix.v12 = m01; matrix.v13 = m02; matrix.v14 = m03;
+        matrix.v21 = m10; matrix.v22 = m11; matrix.v23 = m12; matrix.v24 = m13;
+        matrix.v31 = m20; matrix.v32 = m21; matrix.v33 = m22; matrix.v34 = m23;
+        matrix.v41 = m30; matrix.v42 = m31; matrix.v43 = m32; matrix.v44 = m33;
+    }
+}
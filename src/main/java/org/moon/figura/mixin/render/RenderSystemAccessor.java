@@ -0,0 +1,15 @@
+package org.moon.figura.mixin.render;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.math.Vector3f;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(RenderSystem.class)
+public interface RenderSystemAccessor {
+
+    @Accessor("shaderLightDirections")
+    static Vector3f[] getShaderLightDirections() {
+        throw new AssertionError();
+    }
+}
@@ -18,6 +18,7 @@ import net.minecraft.world.entity.player.Player;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatars.Avatar;
 import org.moon.figura.avatars.AvatarManager;
+import org.moon.figura.avatars.model.rendering.AvatarLod;
 import org.moon.figura.avatars.model.rendering.PartFilterScheme;
 import org.moon.figura.config.Config;
 import org.moon.figura.ducks.LivingEntityRendererAccessor;
@@ -83,6 +84,13 @@ public abstract class LivingEntityRendererMixin<T extends LivingEntity, M extend
         if (currentAvatar == null)
             return;
 
+        //too small on the screen, leave it to the vanilla model
+        AvatarLod.Tier lod = UIHelper.paperdoll ? AvatarLod.Tier.FULL : currentAvatar.lod.update(entity, delta);
+        if (lod == AvatarLod.Tier.VANILLA) {
+            currentAvatar = null;
+            return;
+        }
+
         if (currentAvatar.luaRuntime != null && getModel() instanceof PlayerModel<?> playerModel && entity instanceof Player) {
             currentAvatar.luaRuntime.vanilla_model.PLAYER.store(playerModel);
             if (currentAvatar.trust.get(TrustContainer.Trust.VANILLA_MODEL_EDIT) == 1)
@@ -98,7 +106,7 @@ public abstract class LivingEntityRendererMixin<T extends LivingEntity, M extend
         PartFilterScheme filter = invisible ? PartFilterScheme.PIVOTS : entity.isSpectator() ? PartFilterScheme.HEAD : PartFilterScheme.MODEL;
         int overlay = getOverlayCoords(entity, getWhiteOverlayProgress(entity, delta));
         currentAvatar.renderEvent(delta);
-        currentAvatar.render(entity, yaw, delta, translucent ? 0.15f : 1f, matrices, bufferSource, light, overlay, (LivingEntityRenderer<?, ?>) (Object) this, filter, translucent, glowing);
+        currentAvatar.render(entity, yaw, delta, translucent ? 0.15f : 1f, matrices, bufferSource, light, overlay, (LivingEntityRenderer<?, ?>) (Object) this, filter, translucent, glowing, lod);
         currentAvatar.postRenderEvent(delta);
     }
 
@@ -21,10 +21,13 @@ public class BlockbenchModel {
         int width, height;
     }
 
+    //not reflection-parsed, see BlockbenchModelParser.readTextures()
     public static class Texture {
         String name;
-        String source;
         String render_mode;
+
+        //the image, decoded from the "source" data uri
+        byte[] data;
     }
 
     // -- elements -- //
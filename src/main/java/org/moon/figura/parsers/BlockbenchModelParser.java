@@ -1,32 +1,36 @@
 package org.moon.figura.parsers;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import net.minecraft.nbt.*;
 import org.moon.figura.avatars.model.ParentType;
 import org.moon.figura.math.vector.FiguraVec3;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
 
 //main class to convert a blockbench model (json) into nbt
 //default fields are omitted from the nbt to save up space
-//note: use the same instance for parsing multiple models for the same avatar
+//note: the texture and animation ids start at 0 for every model, see applyOffsets() for joining multiple models
+//an instance can parse any number of models, but only one at a time, so use one per thread
 public class BlockbenchModelParser {
 
-    //offsets for usage of diverse models
-    private int textureOffset = 0;
-    private int animationOffset = 0;
-
     //used during the parser
     private final HashMap<String, CompoundTag> elementMap = new HashMap<>();
     private final HashMap<String, ListTag> animationMap = new HashMap<>();
     private final HashMap<String, TextureData> textureMap = new HashMap<>();
     private final HashMap<Integer, String> textureIdMap = new HashMap<>();
 
+    //size of the base64 chunks decoded at once, must be a multiple of 4
+    private static final int BASE64_CHUNK = 4096;
+
     //parser
-    public ModelData parseModel(String json, String modelName) {
+    public ModelData parseModel(Reader json, String modelName) throws IOException {
         //parse json -> object
         Gson gson = new GsonBuilder().create();
-        BlockbenchModel model = gson.fromJson(json, BlockbenchModel.class);
+        BlockbenchModel model = readModel(gson, new JsonReader(json));
 
         //return lists
         List<CompoundTag> textureList = new ArrayList<>();
@@ -64,6 +68,133 @@ public class BlockbenchModelParser {
         return new ModelData(textureList, animationList, nbt);
     }
 
+    // -- json reading -- //
+
+    /**
+     * Walks the model json once, straight from the file, only keeping the fields used by the parser,
+     * so the whole json is never in memory, neither as a string nor as a tree
+     */
+    private static BlockbenchModel readModel(Gson gson, JsonReader reader) throws IOException {
+        BlockbenchModel model = new BlockbenchModel();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "resolution" -> model.resolution = gson.fromJson(reader, BlockbenchModel.Resolution.class);
+                case "elements" -> model.elements = gson.fromJson(reader, BlockbenchModel.Element[].class);
+                case "outliner" -> model.outliner = gson.fromJson(reader, JsonArray.class);
+                case "animations" -> model.animations = gson.fromJson(reader, BlockbenchModel.Animation[].class);
+                case "textures" -> model.textures = readTextures(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return model;
+    }
+
+    //textures are read by hand, to decode their source without copying the whole data uri around
+    private static BlockbenchModel.Texture[] readTextures(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        List<BlockbenchModel.Texture> textures = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            BlockbenchModel.Texture texture = new BlockbenchModel.Texture();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+
+                switch (key) {
+                    case "name" -> texture.name = reader.nextString();
+                    case "render_mode" -> texture.render_mode = reader.nextString();
+                    case "source" -> texture.data = decodeDataUri(reader.nextString());
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            textures.add(texture);
+        }
+        reader.endArray();
+
+        return textures.toArray(new BlockbenchModel.Texture[0]);
+    }
+
+    /**
+     * Decodes the base64 data of a data uri (data:image/png;base64,...) in small chunks,
+     * straight from the string, into an array of the exact size
+     */
+    public static byte[] decodeDataUri(String uri) {
+        int start = uri.startsWith("data:") ? uri.indexOf(',') + 1 : 0;
+        int end = uri.length();
+        while (end > start && uri.charAt(end - 1) == '=')
+            end--;
+
+        //every 4 chars are 3 bytes, and the leftover 2 or 3 chars are 1 or 2 bytes
+        byte[] result = new byte[(end - start) * 3 / 4];
+        byte[] chunk = new byte[BASE64_CHUNK];
+        byte[] decoded = new byte[BASE64_CHUNK / 4 * 3];
+        Base64.Decoder decoder = Base64.getDecoder();
+
+        int written = 0;
+        for (int i = start; i < end; i += BASE64_CHUNK) {
+            int length = Math.min(BASE64_CHUNK, end - i);
+            for (int j = 0; j < length; j++)
+                chunk[j] = (byte) uri.charAt(i + j);
+
+            int count = decoder.decode(length == BASE64_CHUNK ? chunk : Arrays.copyOf(chunk, length), decoded);
+            System.arraycopy(decoded, 0, result, written, count);
+            written += count;
+        }
+
+        return result;
+    }
+
+    /**
+     * Shifts the texture and animation ids of a parsed model, in place, to be put after the textures and animations of other models
+     * @param part the model nbt, or any of its parts
+     */
+    public static void applyOffsets(CompoundTag part, int textureOffset, int animationOffset) {
+        //group animations
+        if (animationOffset != 0 && part.contains("anim")) {
+            for (Tag tag : part.getList("anim", Tag.TAG_COMPOUND)) {
+                CompoundTag anim = (CompoundTag) tag;
+                anim.putInt("id", anim.getInt("id") + animationOffset);
+            }
+        }
+
+        if (textureOffset != 0) {
+            //cube faces
+            if (part.contains("cube_data")) {
+                CompoundTag faces = part.getCompound("cube_data");
+                for (String key : faces.getAllKeys()) {
+                    CompoundTag face = faces.getCompound(key);
+                    if (face.contains("tex"))
+                        face.putInt("tex", face.getInt("tex") + textureOffset);
+                }
+            }
+
+            //mesh faces, (texID << 4) + vertex count
+            if (part.contains("mesh_data")) {
+                ListTag tex = part.getCompound("mesh_data").getList("tex", Tag.TAG_SHORT);
+                for (int i = 0; i < tex.size(); i++)
+                    tex.set(i, ShortTag.valueOf((short) (tex.getShort(i) + (textureOffset << 4))));
+            }
+        }
+
+        for (Tag child : part.getList("chld", Tag.TAG_COMPOUND))
+            applyOffsets((CompoundTag) child, textureOffset, animationOffset);
+    }
+
     // -- internal functions -- //
 
     private void parseTextures(List<CompoundTag> list, BlockbenchModel.Texture[] textures, BlockbenchModel.Resolution resolution) {
@@ -80,7 +211,7 @@ public class BlockbenchModelParser {
 
         //read textures
         for (int i = 0; i < textures.length; i++) {
-            byte[] source = Base64.getDecoder().decode(textures[i].source.replace("data:image/png;base64,", ""));
+            byte[] source = textures[i].data;
             String renderType = textures[i].render_mode;
 
             //name
@@ -117,7 +248,7 @@ public class BlockbenchModelParser {
             //generate the texture data
             if (!textureMap.containsKey(name)) {
                 //id is generated by the position of the name in the list
-                int id = textureIndex.indexOf(name) + textureOffset;
+                int id = textureIndex.indexOf(name);
 
                 //fix texture size for more speed
                 int[] imageSize = getTextureSize(source);
@@ -130,7 +261,6 @@ public class BlockbenchModelParser {
 
         for (Map.Entry<String, CompoundTag> entry : texturesNbt.entrySet())
             list.add(entry.getValue());
-        textureOffset += list.size();
     }
 
     private void parseElements(Gson gson, BlockbenchModel.Element[] elements) {
@@ -291,13 +421,13 @@ public class BlockbenchModelParser {
         return nbt;
     }
 
-    private static final FiguraVec3
+    private final FiguraVec3
             v1 = FiguraVec3.of(),
             v2 = FiguraVec3.of(),
             v3 = FiguraVec3.of(),
             v4 = FiguraVec3.of();
 
-    private static void reorderVertices(String[] vertexNames, Map<String, Integer> nameToIndex, ListTag vertices) {
+    private void reorderVertices(String[] vertexNames, Map<String, Integer> nameToIndex, ListTag vertices) {
         //Fill in v1, v2, v3, v4 from the given vertices
         readVectors(vertexNames, nameToIndex, vertices);
 
@@ -314,7 +444,7 @@ public class BlockbenchModelParser {
 
     }
 
-    private static void readVectors(String[] vertexNames, Map<String, Integer> nameToIndex, ListTag vertices) {
+    private void readVectors(String[] vertexNames, Map<String, Integer> nameToIndex, ListTag vertices) {
         int i = nameToIndex.get(vertexNames[0]);
         v1.set(vertices.getFloat(3*i), vertices.getFloat(3*i+1), vertices.getFloat(3*i+2));
         i = nameToIndex.get(vertexNames[1]);
@@ -325,7 +455,7 @@ public class BlockbenchModelParser {
         v4.set(vertices.getFloat(3 * i), vertices.getFloat(3 * i + 1), vertices.getFloat(3 * i + 2));
     }
 
-    private static final FiguraVec3
+    private final FiguraVec3
             t1 = FiguraVec3.of(),
             t2 = FiguraVec3.of(),
             t3 = FiguraVec3.of(),
@@ -334,7 +464,7 @@ public class BlockbenchModelParser {
     /**
      * Checks whether the two points given are on opposite sides of the line given.
      */
-    private static boolean testOppositeSides(FiguraVec3 linePoint1, FiguraVec3 linePoint2, FiguraVec3 point1, FiguraVec3 point2) {
+    private boolean testOppositeSides(FiguraVec3 linePoint1, FiguraVec3 linePoint2, FiguraVec3 point1, FiguraVec3 point2) {
         t1.set(linePoint1);
         t2.set(linePoint2);
         t3.set(point1);
@@ -448,7 +578,7 @@ public class BlockbenchModelParser {
                         channels.put("scale", scaleData);
 
                     if (!channels.isEmpty()) {
-                        nbt.putInt("id", i + animationOffset);
+                        nbt.putInt("id", i);
                         nbt.put("data", channels);
                     }
                     if (!nbt.isEmpty())
@@ -463,7 +593,6 @@ public class BlockbenchModelParser {
             i++;
         }
 
-        animationOffset += list.size();
     }
 
     private ListTag parseKeyFrameData(Gson gson, JsonObject object, String channel) {
@@ -31,6 +31,8 @@ public class TrustContainer {
         TICK_INST(0, 32767),
         WORLD_RENDER_INST(0, 32767),
         RENDER_INST(0, 32767),
+        EVENT_TIME(0, 32767),
+        API_COST(0, 1024),
         COMPLEXITY(0, 8191),
         PARTICLES(0, 63),
         SOUNDS(0, 63),
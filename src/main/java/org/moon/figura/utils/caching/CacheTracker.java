@@ -0,0 +1,110 @@
+package org.moon.figura.utils.caching;
+
+import org.moon.figura.FiguraMod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in debugging of the cache free() discipline, off by default as it walks the stack on every getFresh().
+ * Enabled with the "/figura debug caches track" command, or from startup with -Dfigura.trackCaches=true.
+ * Keeps every taken object until it is freed, with the call site which took it, and catches
+ * double frees (the object is not pooled again) and objects modified after being freed.
+ * Modifications are only noticed for the types with a CachedType.snapshot() (vectors, matrices and part customizations).
+ * Reading a freed object can not be noticed.
+ */
+public class CacheTracker {
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static volatile boolean enabled = Boolean.getBoolean("figura.trackCaches");
+
+    //taken object -> call site, and freed object -> its state when freed
+    private static final Map<Object, String> OUTSTANDING = new IdentityHashMap<>();
+    private static final Map<Object, String> FREED = new IdentityHashMap<>();
+    private static long doubleFrees, useAfterFrees;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        CacheTracker.enabled = enabled;
+        OUTSTANDING.clear();
+        FREED.clear();
+        doubleFrees = useAfterFrees = 0;
+    }
+
+    static synchronized void onTake(Object value, boolean reused) {
+        if (reused) {
+            String snapshot = FREED.remove(value);
+            if (snapshot != null && !snapshot.equals(snapshot(value))) {
+                useAfterFrees++;
+                FiguraMod.LOGGER.warn("{} was modified after being freed, now taken by {}", value.getClass().getSimpleName(), callSite(value));
+            }
+        }
+        OUTSTANDING.put(value, callSite(value));
+    }
+
+    /**
+     * @return false if the value was already freed, so it must not be pooled again
+     */
+    static synchronized boolean onFree(Object value) {
+        if (FREED.containsKey(value)) {
+            doubleFrees++;
+            FiguraMod.LOGGER.warn("{} freed twice, by {}", value.getClass().getSimpleName(), callSite(value));
+            return false;
+        }
+
+        OUTSTANDING.remove(value);
+        FREED.put(value, snapshot(value));
+        return true;
+    }
+
+    //the pool let it go, so there is nothing left to check
+    static synchronized void onDrop(Object value) {
+        FREED.remove(value);
+    }
+
+    public static synchronized long getDoubleFrees() {
+        return doubleFrees;
+    }
+
+    public static synchronized long getUseAfterFrees() {
+        return useAfterFrees;
+    }
+
+    /**
+     * Outstanding objects per type and call site, most outstanding first.
+     */
+    public static synchronized List<Map.Entry<String, Integer>> getOutstanding() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<Object, String> entry : OUTSTANDING.entrySet())
+            counts.merge(entry.getKey().getClass().getSimpleName() + " @ " + entry.getValue(), 1, Integer::sum);
+
+        List<Map.Entry<String, Integer>> list = new ArrayList<>(counts.entrySet());
+        list.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        return list;
+    }
+
+    private static String snapshot(Object value) {
+        return value instanceof CachedType<?> type ? type.snapshot() : null;
+    }
+
+    //first frame outside of the caches and the cached type itself (like FiguraVec3.of() or copy())
+    private static String callSite(Object value) {
+        Class<?> type = value.getClass();
+        String pkg = CacheTracker.class.getPackageName();
+        return WALKER.walk(frames -> frames
+                .filter(frame -> {
+                    Class<?> clazz = frame.getDeclaringClass();
+                    return !clazz.getPackageName().equals(pkg) && !clazz.isAssignableFrom(type);
+                })
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+}
@@ -1,48 +1,256 @@
 package org.moon.figura.utils.caching;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 public class CacheUtils {
 
     public static final int DEFAULT_MAX_SIZE = 500;
 
+    private static final List<Cache<?>> CACHES = new CopyOnWriteArrayList<>();
+
     public static <T extends CachedType> Cache<T> getCache(Supplier<T> generator, int maxSize) {
-        return new Cache<>(generator, maxSize);
+        Cache<T> cache = new Cache<>(generator, maxSize);
+        CACHES.add(cache);
+        return cache;
     }
 
     public static <T extends CachedType> Cache<T> getCache(Supplier<T> generator) {
-        return new Cache<>(generator, DEFAULT_MAX_SIZE  );
+        return getCache(generator, DEFAULT_MAX_SIZE);
+    }
+
+    public static List<Cache<?>> getCaches() {
+        return CACHES;
     }
 
+    /**
+     * Bounded pool, safe to use from any thread.
+     * Each thread takes from and gives back to its own small magazine, without any locking,
+     * and only goes to the shared depot, in batches, when the magazine runs empty or full.
+     * So objects freed on the render thread don't pile up when they are only ever allocated
+     * by the loading threads, and the other way around.
+     * The magazines of threads which died (pool workers, loading threads) are moved back to the depot
+     * when it runs empty, and before reading the stats.
+     */
     public static class Cache<T extends CachedType> {
-        private final Queue<T> cache;
+
+        private static final int MAGAZINE_SIZE = 64;
+
         private final Supplier<T> generator;
-        private final int maxSize;
+        private final int magazineSize;
+        private final ThreadLocal<Magazine> magazines;
 
-        private Cache(Supplier<T> generator) {
-            this(generator, Integer.MAX_VALUE);
-        }
+        //shared pooled objects, guarded by itself
+        private final Object[] depot;
+        private int depotSize = 0;
+        //every thread magazine, to take back the ones of dead threads, guarded by the depot
+        private final List<Magazine> registry = new ArrayList<>();
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder overflows = new LongAdder();
+        private final LongAdder pooled = new LongAdder();
+        private volatile String name;
 
         private Cache(Supplier<T> generator, int maxSize) {
-            cache = new LinkedList<>();
             this.generator = generator;
-            this.maxSize = maxSize;
+            this.magazineSize = Math.max(Math.min(MAGAZINE_SIZE, maxSize / 2), 1);
+            this.magazines = ThreadLocal.withInitial(this::register);
+            this.depot = new Object[Math.max(maxSize, 1)];
         }
 
         public T getFresh() {
-            T result = cache.poll();
-            if (result == null)
+            Magazine magazine = magazines.get();
+            if (magazine.size == 0)
+                refill(magazine);
+
+            T result;
+            boolean reused = magazine.size > 0;
+            if (reused) {
+                result = magazine.pop();
+                hits.increment();
+                pooled.decrement();
+            } else {
                 result = generator.get();
+                misses.increment();
+                if (name == null)
+                    name = result.getClass().getSimpleName();
+            }
+
+            if (CacheTracker.isEnabled())
+                CacheTracker.onTake(result, reused);
+
             result.reset();
             return result;
         }
 
         public void offerOld(T old) {
-            if (cache.size() >= maxSize)
+            if (CacheTracker.isEnabled() && !CacheTracker.onFree(old))
                 return;
-            cache.offer(old);
+
+            pooled.increment();
+            Magazine magazine = magazines.get();
+            if (magazine.size == magazineSize)
+                spill(magazine);
+            magazine.push(old);
+        }
+
+        private Magazine register() {
+            Magazine magazine = new Magazine(magazineSize, Thread.currentThread());
+            synchronized (depot) {
+                registry.add(magazine);
+            }
+            return magazine;
+        }
+
+        //moves the magazines of the dead threads to the depot, must hold the depot lock
+        //a dead thread never touches its magazine again, and its end happens before isAlive() returns false
+        private void reclaimDead() {
+            int dropped = 0;
+            for (Iterator<Magazine> iterator = registry.iterator(); iterator.hasNext(); ) {
+                Magazine magazine = iterator.next();
+                Thread owner = magazine.owner.get();
+                if (owner != null && owner.isAlive())
+                    continue;
+
+                iterator.remove();
+                while (magazine.size > 0) {
+                    Object value = magazine.pop();
+                    if (depotSize == depot.length) {
+                        dropped++;
+                        if (CacheTracker.isEnabled())
+                            CacheTracker.onDrop(value);
+                        continue;
+                    }
+                    depot[depotSize++] = value;
+                }
+            }
+            if (dropped > 0) {
+                overflows.add(dropped);
+                pooled.add(-dropped);
+            }
+        }
+
+        //moves up to half a magazine from the depot
+        private void refill(Magazine magazine) {
+            synchronized (depot) {
+                if (depotSize == 0)
+                    reclaimDead();
+                int count = Math.min(depotSize, (magazineSize + 1) / 2);
+                for (int i = 0; i < count; i++) {
+                    magazine.push(depot[--depotSize]);
+                    depot[depotSize] = null;
+                }
+            }
+        }
+
+        //moves half of the magazine to the depot, dropping what does not fit
+        private void spill(Magazine magazine) {
+            int count = (magazineSize + 1) / 2;
+            int dropped = 0;
+            synchronized (depot) {
+                for (int i = 0; i < count; i++) {
+                    Object value = magazine.pop();
+                    if (depotSize == depot.length) {
+                        dropped++;
+                        if (CacheTracker.isEnabled())
+                            CacheTracker.onDrop(value);
+                        continue;
+                    }
+                    depot[depotSize++] = value;
+                }
+            }
+            if (dropped > 0) {
+                overflows.add(dropped);
+                pooled.add(-dropped);
+            }
+        }
+
+        public String getName() {
+            return name == null ? "?" : name;
+        }
+
+        /**
+         * Objects created by this cache.
+         */
+        public long getAllocated() {
+            return misses.sum();
+        }
+
+        /**
+         * Objects waiting in the pool, in the depot and in every live thread magazine.
+         */
+        public long getPooled() {
+            synchronized (depot) {
+                reclaimDead();
+            }
+            return pooled.sum();
+        }
+
+        /**
+         * Objects created by this cache and not given back (in use, or leaked).
+         */
+        public long getLive() {
+            return getAllocated() - getPooled() - getOverflows();
+        }
+
+        /**
+         * Times an object was taken from the pool.
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * Times the pool was empty and a new object had to be allocated.
+         */
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * Objects given back while the pool was already full, left to the GC.
+         */
+        public long getOverflows() {
+            return overflows.sum();
+        }
+
+        /**
+         * Objects in the shared depot, the per-thread magazines are not counted.
+         */
+        public int getDepotSize() {
+            synchronized (depot) {
+                reclaimDead();
+                return depotSize;
+            }
+        }
+
+        private static class Magazine {
+
+            private final Object[] values;
+            private final WeakReference<Thread> owner;
+            private int size = 0;
+
+            private Magazine(int capacity, Thread owner) {
+                this.values = new Object[capacity];
+                this.owner = new WeakReference<>(owner);
+            }
+
+            private void push(Object value) {
+                values[size++] = value;
+            }
+
+            @SuppressWarnings("unchecked")
+            private <V> V pop() {
+                V value = (V) values[--size];
+                values[size] = null;
+                return value;
+            }
         }
     }
 }
@@ -3,4 +3,11 @@ package org.moon.figura.utils.caching;
 public interface CachedType<T extends CachedType<T>> {
     T reset();
     void free();
+
+    /**
+     * Exact contents of the object, used by the CacheTracker to notice changes after free(), or null if not supported.
+     */
+    default String snapshot() {
+        return null;
+    }
 }